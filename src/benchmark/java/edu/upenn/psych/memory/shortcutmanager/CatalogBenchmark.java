@@ -0,0 +1,99 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the retained heap and lookup allocation of a plain {@code List<XAction>} with a {@link
+ * Catalog} holding the same synthetic actions. Run with {@code ./gradlew catalogBenchmark}, or
+ * {@code -Pactions=N} for a different catalog size.
+ *
+ * <p>Every string is a distinct instance, as it would be straight out of the XML parser. A quarter
+ * of the actions belong to multiact classes that share a class name and tooltip.
+ */
+final class CatalogBenchmark {
+  private static final int DEFAULT_ACTIONS = 200_000;
+  private static final int ENUMS_PER_MULTIACT = 16;
+  private static final int TOOLTIPS = 64;
+
+  private CatalogBenchmark() {}
+
+  public static void main(String[] args) {
+    System.setProperty("java.awt.headless", "true");
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ACTIONS;
+
+    long baseline = usedHeap();
+    List<XAction> list = generate(n);
+    long listBytes = usedHeap() - baseline;
+    long listLookup = idLookupAllocation(list);
+
+    Catalog catalog = Catalog.of(list);
+    list = null;
+    long catalogBytes = usedHeap() - baseline;
+    long catalogLookup = idLookupAllocation(catalog);
+
+    System.out.printf("%,d actions%n", catalog.size());
+    System.out.printf("  List<XAction>  %,14d bytes retained%n", listBytes);
+    System.out.printf(
+        "  Catalog        %,14d bytes retained (%.0f%%)%n",
+        catalogBytes, 100.0 * catalogBytes / listBytes);
+    System.out.printf("  id scan, list    %,12d bytes allocated%n", listLookup);
+    System.out.printf("  id scan, catalog %,12d bytes allocated%n", catalogLookup);
+  }
+
+  private static List<XAction> generate(int n) {
+    List<XAction> xactions = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      boolean multiact = i % 4 == 0;
+      int classIndex = multiact ? i / (4 * ENUMS_PER_MULTIACT) : i;
+      String className =
+          new StringBuilder("behaviors.")
+              .append(multiact ? "multiact.MultiAction" : "singleact.Action")
+              .append(classIndex)
+              .toString();
+      String enumValue = multiact ? "VALUE_" + (i / 4 % ENUMS_PER_MULTIACT) : null;
+      String tooltip = new StringBuilder("Tooltip number ").append(i % TOOLTIPS).toString();
+      Shortcut shortcut =
+          i % 8 == 0 ? Shortcut.of(i % 26 + 'A', i % 16 << 6).shortcut() : null;
+      xactions.add(new XAction(className, enumValue, "Action " + i, tooltip, shortcut));
+    }
+    return xactions;
+  }
+
+  // Bytes allocated by reading every action's id once, e.g. to build a lookup map.
+  private static long idLookupAllocation(List<XAction> xactions) {
+    long start = allocatedBytes();
+    long hash = 0;
+    if (xactions instanceof Catalog catalog) {
+      for (int i = 0; i < catalog.size(); i++) {
+        hash += catalog.id(i).hashCode();
+      }
+    } else {
+      for (XAction xaction : xactions) {
+        hash += xaction.getId().hashCode();
+      }
+    }
+    long allocated = allocatedBytes() - start;
+    if (hash == 42) {
+      System.out.println();
+    }
+    return allocated;
+  }
+
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    return threads instanceof com.sun.management.ThreadMXBean sun
+        ? sun.getCurrentThreadAllocatedBytes()
+        : 0;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 4; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,251 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.event.EventListenerList;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+
+/**
+ * Tree of actions grouped by package or by the {@code category} attribute, whose leaves are the
+ * {@link XAction}s themselves.
+ *
+ * <p>Rows are ordered once by group path so that every group is a contiguous range of that order.
+ * Paths are computed per distinct class or category, whose names the {@link Catalog} shares
+ * between rows, and rows are placed by the ordinal of their path in a counting sort. A group only
+ * records its range and therefore its count; its children, including the {@link XAction} views of
+ * its leaves, are materialized the first time it is expanded, so collapsed groups cost one small
+ * object each.
+ */
+final class ActionTreeModel implements TreeModel {
+
+  enum Grouping {
+    PACKAGE("Package"),
+    CATEGORY("Category");
+
+    private final String label;
+
+    Grouping(String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String toString() {
+      return label;
+    }
+  }
+
+  static final String UNCATEGORIZED = "Uncategorized";
+
+  private static final String CATEGORY_SEPARATOR = "/";
+
+  private final Catalog catalog;
+  // Catalog rows in tree order, and the ordinal of each one's path in paths.
+  private final int[] order;
+  private final int[] pathAt;
+  private final String[][] paths;
+  private final Group root;
+  private final EventListenerList listeners = new EventListenerList();
+
+  ActionTreeModel(Catalog catalog, Grouping grouping) {
+    this.catalog = catalog;
+    int n = catalog.size();
+    // One path per distinct key: the class name, or the category, which rows share.
+    Map<String, Integer> keyOrdinals = new HashMap<>();
+    List<String[]> keyPaths = new ArrayList<>();
+    int[] keyOf = new int[n];
+    for (int i = 0; i < n; i++) {
+      String key = grouping == Grouping.CATEGORY ? catalog.category(i) : catalog.className(i);
+      Integer ordinal = keyOrdinals.get(key);
+      if (ordinal == null) {
+        ordinal = keyPaths.size();
+        keyOrdinals.put(key, ordinal);
+        keyPaths.add(pathOf(key, grouping));
+      }
+      keyOf[i] = ordinal;
+    }
+
+    // Keys with equal paths, such as classes in one package, share a path ordinal.
+    Integer[] keys = new Integer[keyPaths.size()];
+    for (int k = 0; k < keys.length; k++) {
+      keys[k] = k;
+    }
+    Arrays.sort(keys, Comparator.comparing(keyPaths::get, ActionTreeModel::comparePaths));
+    int[] pathOfKey = new int[keys.length];
+    List<String[]> distinct = new ArrayList<>();
+    for (int k : keys) {
+      String[] path = keyPaths.get(k);
+      if (distinct.isEmpty() || comparePaths(distinct.get(distinct.size() - 1), path) != 0) {
+        distinct.add(path);
+      }
+      pathOfKey[k] = distinct.size() - 1;
+    }
+    this.paths = distinct.toArray(new String[0][]);
+
+    // Counting sort on the path ordinal, so actions keep their catalog order within a group.
+    int[] start = new int[paths.length + 1];
+    for (int i = 0; i < n; i++) {
+      start[pathOfKey[keyOf[i]] + 1]++;
+    }
+    for (int p = 0; p < paths.length; p++) {
+      start[p + 1] += start[p];
+    }
+    this.order = new int[n];
+    this.pathAt = new int[n];
+    for (int i = 0; i < n; i++) {
+      int p = pathOfKey[keyOf[i]];
+      int at = start[p]++;
+      order[at] = i;
+      pathAt[at] = p;
+    }
+    this.root = new Group("Actions", 0, 0, n);
+  }
+
+  private static String[] pathOf(String key, Grouping grouping) {
+    if (grouping == Grouping.CATEGORY) {
+      return key == null || key.isBlank()
+          ? new String[] {UNCATEGORIZED}
+          : key.trim().split("\\s*" + CATEGORY_SEPARATOR + "\\s*");
+    }
+    int lastDot = key.lastIndexOf('.');
+    return lastDot < 0 ? new String[0] : key.substring(0, lastDot).split("\\.");
+  }
+
+  // The path of the action at position i of the tree order.
+  private String[] path(int i) {
+    return paths[pathAt[i]];
+  }
+
+  // Segment by segment, with a prefix before any extension of it, so each group is contiguous.
+  private static int comparePaths(String[] a, String[] b) {
+    int common = Math.min(a.length, b.length);
+    for (int i = 0; i < common; i++) {
+      int c = a[i].compareTo(b[i]);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return Integer.compare(a.length, b.length);
+  }
+
+  /** Covers the sorted actions {@code [from, to)}, which share their first depth segments. */
+  final class Group {
+    private final String label;
+    private final int depth;
+    private final int from;
+    private final int to;
+    private List<Object> children;
+
+    private Group(String label, int depth, int from, int to) {
+      this.label = label;
+      this.depth = depth;
+      this.from = from;
+      this.to = to;
+    }
+
+    String label() {
+      return label;
+    }
+
+    int count() {
+      return to - from;
+    }
+
+    private List<Object> children() {
+      if (children == null) {
+        children = materialize();
+      }
+      return children;
+    }
+
+    // Leaves directly in this group sort first, followed by one run per next segment.
+    private List<Object> materialize() {
+      List<Object> nodes = new ArrayList<>();
+      int i = from;
+      while (i < to && path(i).length == depth) {
+        nodes.add(catalog.get(order[i++]));
+      }
+      while (i < to) {
+        String segment = path(i)[depth];
+        int end = i + 1;
+        while (end < to && path(end)[depth].equals(segment)) {
+          end++;
+        }
+        nodes.add(collapse(segment, i, end));
+        i = end;
+      }
+      return nodes;
+    }
+
+    // Folds chains of single-child packages into one node, e.g. "edu.upenn.psych".
+    private Group collapse(String segment, int start, int end) {
+      StringBuilder label = new StringBuilder(segment);
+      int childDepth = depth + 1;
+      while (sharesNextSegment(childDepth, start, end)) {
+        label.append('.').append(path(start)[childDepth]);
+        childDepth++;
+      }
+      return new Group(label.toString(), childDepth, start, end);
+    }
+
+    private boolean sharesNextSegment(int segmentDepth, int start, int end) {
+      String[] first = path(start);
+      String[] last = path(end - 1);
+      if (first.length <= segmentDepth || last.length <= segmentDepth) {
+        return false;
+      }
+      // Sorted, so the range shares the segment iff its first and last entries do.
+      return first[segmentDepth].equals(last[segmentDepth]);
+    }
+
+    @Override
+    public String toString() {
+      return label + " (" + count() + ")";
+    }
+  }
+
+  @Override
+  public Group getRoot() {
+    return root;
+  }
+
+  @Override
+  public Object getChild(Object parent, int index) {
+    return parent instanceof Group group ? group.children().get(index) : null;
+  }
+
+  @Override
+  public int getChildCount(Object parent) {
+    return parent instanceof Group group ? group.children().size() : 0;
+  }
+
+  @Override
+  public boolean isLeaf(Object node) {
+    return node instanceof XAction;
+  }
+
+  @Override
+  public void valueForPathChanged(TreePath path, Object newValue) {
+    // Not editable
+  }
+
+  @Override
+  public int getIndexOfChild(Object parent, Object child) {
+    return parent instanceof Group group ? group.children().indexOf(child) : -1;
+  }
+
+  @Override
+  public void addTreeModelListener(TreeModelListener l) {
+    listeners.add(TreeModelListener.class, l);
+  }
+
+  @Override
+  public void removeTreeModelListener(TreeModelListener l) {
+    listeners.remove(TreeModelListener.class, l);
+  }
+}
@@ -0,0 +1,440 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Headless command-line operations on a catalog and a user's keymap, for scripts and CI.
+ *
+ * <p>Uses {@link XActionParser} and {@link UserDB} directly and never opens a window, so it starts
+ * quickly, needs no display and several instances can run side by side on different namespaces.
+ * Only {@code replay} creates a Swing component: the shortcut table, never shown, whose key
+ * listeners it drives.
+ */
+final class BatchMode {
+  static final int OK = 0;
+  static final int FINDINGS = 1;
+  static final int USAGE = 2;
+  static final int FAILURE = 3;
+
+  private static final String USAGE_TEXT =
+      """
+      usage: shortcut-manager COMMAND [OPTIONS] [FILE]
+
+      commands:
+        validate       parse the catalog, listing every problem by line and column, and
+                       check it for conflicts
+        list           print "id<TAB>shortcut<TAB>name" for every action
+        set FILE       apply "id<TAB>shortcut" lines as one batch; a shortcut of # unbinds
+                       and "default" restores the default (extra columns are ignored, so the
+                       output of list can be edited and fed back)
+        reset          restore every default binding
+        export FILE    write the user's overrides (JSON lines, or Smile for .smile/.bin)
+        import FILE    apply a keymap written by export as one batch
+        conflicts      report conflicts in the catalog as bound by the user; the user's
+                       bindings apply on this platform, the others keep the catalog's
+        replay TRACE   feed a recorded key trace to a headless table over the catalog, starting
+                       from the defaults, and print handling latency and the resulting bindings
+        cheatsheet FILE
+                       write the user's bindings as HTML (.html), Markdown (.md) or text
+        selfcheck      apply random edit sequences to an in-memory keymap over the catalog and
+                       to a reference model, and report the first sequence where they differ
+
+      options:
+        --catalog PATH    actions file (default: the bundled actions.xml)
+        --namespace NS    preferences namespace (default: %s)
+        --profile NAME    existing keymap profile to use for this command only (default: the
+                          active profile)
+        --replace         import: actions absent from the file revert to their defaults
+        --group KIND      cheatsheet: group by "category" or "package" (default: category if
+                          the catalog has categories, otherwise package)
+        --sequences N     selfcheck: number of sequences (default: 1000)
+        --length N        selfcheck: edits per sequence (default: 50)
+        --seed N          selfcheck: seed of the first sequence (default: random)
+
+      exit status: 0 success, 1 conflicts or rejected bindings, 2 usage error or a catalog
+      with duplicate ids or shortcuts, 3 failure
+      """;
+
+  // Commands that change the keymap; the rest only read it.
+  private static final Set<String> WRITES = Set.of("set", "reset", "import");
+
+  private final PrintStream out;
+  private final PrintStream err;
+
+  private String command;
+  private String file;
+  private URL catalogUrl;
+  private String namespace;
+  private String profile;
+  private boolean replace;
+  private ActionTreeModel.Grouping grouping;
+  private int sequences = 1000;
+  private int length = 50;
+  private Long seed;
+
+  private BatchMode(PrintStream out, PrintStream err) {
+    this.out = out;
+    this.err = err;
+  }
+
+  static int run(String[] args, URL defaultCatalog, String defaultNamespace) {
+    // Parsing shortcuts loads KeyStroke, which must not try to reach a display.
+    System.setProperty("java.awt.headless", "true");
+    BatchMode batch = new BatchMode(System.out, System.err);
+    batch.catalogUrl = defaultCatalog;
+    batch.namespace = defaultNamespace;
+    if (!batch.parseArgs(args)) {
+      batch.err.print(USAGE_TEXT.formatted(defaultNamespace));
+      return USAGE;
+    }
+    try {
+      return batch.execute();
+    } catch (IOException | RuntimeException e) {
+      Throwable cause = e.getCause() != null ? e.getCause() : e;
+      batch.err.println(batch.command + " failed: " + cause);
+      return FAILURE;
+    }
+  }
+
+  private boolean parseArgs(String[] args) {
+    List<String> positional = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      boolean hasValue = i + 1 < args.length;
+      switch (arg) {
+        case "--catalog" -> {
+          if (!hasValue) {
+            return false;
+          }
+          catalogUrl = toUrl(args[++i]);
+          if (catalogUrl == null) {
+            return false;
+          }
+        }
+        case "--namespace" -> {
+          if (!hasValue) {
+            return false;
+          }
+          namespace = args[++i];
+        }
+        case "--profile" -> {
+          if (!hasValue) {
+            return false;
+          }
+          profile = args[++i];
+        }
+        case "--replace" -> replace = true;
+        case "--sequences", "--length", "--seed" -> {
+          if (!hasValue) {
+            return false;
+          }
+          long value;
+          try {
+            value = Long.parseLong(args[++i]);
+          } catch (NumberFormatException e) {
+            return false;
+          }
+          if (arg.equals("--seed")) {
+            seed = value;
+          } else if (value < 1 || value > Integer.MAX_VALUE) {
+            return false;
+          } else if (arg.equals("--sequences")) {
+            sequences = (int) value;
+          } else {
+            length = (int) value;
+          }
+        }
+        case "--group" -> {
+          if (!hasValue) {
+            return false;
+          }
+          switch (args[++i]) {
+            case "category" -> grouping = ActionTreeModel.Grouping.CATEGORY;
+            case "package" -> grouping = ActionTreeModel.Grouping.PACKAGE;
+            default -> {
+              return false;
+            }
+          }
+        }
+        default -> {
+          if (arg.startsWith("--")) {
+            return false;
+          }
+          positional.add(arg);
+        }
+      }
+    }
+    if (positional.isEmpty() || catalogUrl == null || !namespace.startsWith("/")) {
+      return false;
+    }
+    command = positional.get(0);
+    boolean needsFile =
+        List.of("set", "export", "import", "cheatsheet", "replay").contains(command);
+    if (needsFile) {
+      if (positional.size() != 2) {
+        return false;
+      }
+      file = positional.get(1);
+    } else if (positional.size() != 1) {
+      return false;
+    }
+    return List.of(
+            "validate",
+            "list",
+            "set",
+            "reset",
+            "export",
+            "import",
+            "conflicts",
+            "cheatsheet",
+            "replay",
+            "selfcheck")
+        .contains(command);
+  }
+
+  private static URL toUrl(String location) {
+    try {
+      return location.contains("://") ? new URL(location) : Path.of(location).toUri().toURL();
+    } catch (MalformedURLException e) {
+      return null;
+    }
+  }
+
+  @SuppressWarnings("try") // Sharing is held for the block's extent, never referenced
+  private int execute() throws IOException {
+    if ("validate".equals(command)) {
+      return validate();
+    }
+    XActionParser parser = new XActionParser(catalogUrl);
+    List<XAction> xactions;
+    try {
+      // The checks the window makes, so no command runs over a catalog it would refuse.
+      xactions = parser.getXactions();
+    } catch (XActionParser.ShortcutFileFormatException e) {
+      err.println(e.getMessage());
+      return USAGE;
+    }
+    if ("replay".equals(command)) {
+      return replay(xactions);
+    }
+    if ("selfcheck".equals(command)) {
+      return selfCheck(xactions);
+    }
+
+    UserDB userdb = new UserDB(namespace, xactions, (xaction, oldShortcut) -> {});
+    if (!WRITES.contains(command)) {
+      // Reading needs no lock, and must not make running managers reload.
+      return useProfile(userdb) ? run(parser, xactions, userdb) : USAGE;
+    }
+    // Take the shared lock for writes, so a running manager sees them and neither loses edits.
+    try (Closeable sharing = userdb.shareAcrossProcesses(Duration.ZERO, Runnable::run)) {
+      return useProfile(userdb) ? run(parser, xactions, userdb) : USAGE;
+    }
+  }
+
+  // Selects --profile for this run only; the profile a running manager shows is left alone.
+  private boolean useProfile(UserDB userdb) {
+    if (profile == null || userdb.useProfile(profile)) {
+      return true;
+    }
+    err.println("no profile named " + profile);
+    return false;
+  }
+
+  private int run(XActionParser parser, List<XAction> xactions, UserDB userdb)
+      throws IOException {
+    return switch (command) {
+      case "list" -> list(xactions, userdb);
+      case "set" -> set(xactions, userdb);
+      case "reset" -> {
+        userdb.persistDefaults(true);
+        yield OK;
+      }
+      case "export" -> {
+        userdb.exportKeymap(Path.of(file), KeymapFormat.forFileName(file));
+        yield OK;
+      }
+      case "import" ->
+          report(userdb.importKeymap(Path.of(file), KeymapFormat.forFileName(file), replace));
+      case "conflicts" -> report(ConflictAnalyzer.analyze(parser, userdb));
+      case "cheatsheet" -> cheatSheet(xactions, userdb);
+      default -> throw new IllegalStateException(command);
+    };
+  }
+
+  private int validate() {
+    XActionParser parser = new XActionParser(catalogUrl, XActionParser.Validation.STRICT);
+    try {
+      parser.getProblems();
+    } catch (XActionParser.ShortcutFileFormatException e) {
+      out.println(e.getMessage());
+      return FINDINGS;
+    }
+    return report(ConflictAnalyzer.analyze(parser));
+  }
+
+  private int list(List<XAction> xactions, UserDB userdb) {
+    Map<String, Shortcut> current = userdb.retrieveAll();
+    StringBuilder line = new StringBuilder();
+    for (XAction xaction : xactions) {
+      Shortcut shortcut = current.get(xaction.getId());
+      line.setLength(0);
+      line.append(xaction.getId())
+          .append('\t')
+          .append(shortcut != null ? shortcut.getInternalForm().trim() : "#")
+          .append('\t')
+          .append(xaction.name());
+      out.println(line);
+    }
+    return OK;
+  }
+
+  // Latency summary on stderr and the resulting bindings on stdout, so runs can be diffed.
+  private int replay(List<XAction> xactions) throws IOException {
+    KeyTrace.Trace trace = KeyTrace.read(Path.of(file));
+    KeyTrace.Result result = KeyTrace.replay(trace, xactions);
+    err.printf(
+        "%d events: p50 %d ns, p99 %d ns, max %d ns%n",
+        trace.events().size(),
+        result.percentile(0.50),
+        result.percentile(0.99),
+        result.percentile(1.0));
+    for (String rejected : result.rejected()) {
+      out.println("rejected\t" + rejected);
+    }
+    for (Map.Entry<String, Optional<Shortcut>> entry : result.overrides().entrySet()) {
+      String shortcut = entry.getValue().map(s -> s.getInternalForm().trim()).orElse("#");
+      out.println(entry.getKey() + "\t" + shortcut);
+    }
+    return OK;
+  }
+
+  // Timing on stderr like replay; a failure, with the steps that reproduce it, on stdout.
+  private int selfCheck(List<XAction> xactions) {
+    long first = seed != null ? seed : new SplittableRandom().nextLong();
+    KeymapCheck.Result result = new KeymapCheck(xactions).check(first, sequences, length);
+    err.printf(
+        "%d sequences, %d edits, seeds from %d: p50 %.2f ms, p99 %.2f ms, max %.2f ms"
+            + " (seed %d)%n",
+        result.sequences(),
+        result.operations(),
+        first,
+        result.percentile(0.50) / 1e6,
+        result.percentile(0.99) / 1e6,
+        result.percentile(1.0) / 1e6,
+        first + result.slowest());
+    KeymapCheck.Failure failure = result.failure();
+    if (failure == null) {
+      out.println("UserDB agreed with the model on every sequence");
+      return OK;
+    }
+    out.println("seed " + failure.seed() + " fails after shrinking to:");
+    for (KeymapCheck.Op op : failure.ops()) {
+      out.println("  " + op);
+    }
+    out.println(failure.message());
+    return FINDINGS;
+  }
+
+  private int cheatSheet(List<XAction> xactions, UserDB userdb) throws IOException {
+    ActionTreeModel.Grouping by = grouping;
+    if (by == null) {
+      boolean categorized = xactions.stream().anyMatch(x -> x.category() != null);
+      by = categorized ? ActionTreeModel.Grouping.CATEGORY : ActionTreeModel.Grouping.PACKAGE;
+    }
+    String title = "Keyboard Shortcuts";
+    if (!UserDB.DEFAULT_PROFILE.equals(userdb.getActiveProfile())) {
+      title += " (" + userdb.getActiveProfile() + ")";
+    }
+    try (Writer writer = Files.newBufferedWriter(Path.of(file), StandardCharsets.UTF_8)) {
+      CheatSheet.write(
+          xactions,
+          userdb,
+          Platform.current(),
+          by,
+          CheatSheet.Format.forFileName(file),
+          title,
+          writer);
+    }
+    return OK;
+  }
+
+  private int set(List<XAction> xactions, UserDB userdb) throws IOException {
+    Map<String, XAction> byId = new HashMap<>();
+    for (XAction xaction : xactions) {
+      byId.put(xaction.getId(), xaction);
+    }
+
+    List<XAction> bindings = new ArrayList<>();
+    List<String> problems = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(Path.of(file), StandardCharsets.UTF_8)) {
+      int lineNumber = 0;
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        lineNumber++;
+        if (line.isBlank()) {
+          continue;
+        }
+        String[] columns = line.split("\t");
+        XAction xaction = byId.get(columns[0].trim());
+        String value = columns.length > 1 ? columns[1].trim() : "#";
+        if (xaction == null) {
+          problems.add("line " + lineNumber + ": unknown action " + columns[0]);
+        } else if ("#".equals(value)) {
+          bindings.add(xaction.withShortcut(null));
+        } else if ("default".equals(value)) {
+          bindings.add(xaction);
+        } else {
+          Shortcut shortcut = Shortcut.fromInternalForm(value);
+          if (shortcut == null) {
+            problems.add("line " + lineNumber + ": unparseable shortcut " + value);
+          } else {
+            bindings.add(xaction.withShortcut(shortcut));
+          }
+        }
+      }
+    }
+
+    for (String problem : problems) {
+      err.println(problem);
+    }
+    int status = report(userdb.storeAll(bindings));
+    return problems.isEmpty() ? status : FINDINGS;
+  }
+
+  private int report(ConflictAnalyzer.Report report) {
+    report.print(out);
+    return report.hasErrors() ? FINDINGS : OK;
+  }
+
+  private int report(UserDB.ImportReport report) {
+    for (String problem : report.problems()) {
+      err.println(problem);
+    }
+    for (String conflict : report.conflicts()) {
+      err.println(conflict);
+    }
+    if (!report.applied()) {
+      err.println("nothing applied because of conflicts");
+      return FINDINGS;
+    }
+    out.println(report.records() + " read, " + report.changed() + " bindings changed");
+    return report.problems().isEmpty() ? OK : FINDINGS;
+  }
+}
@@ -0,0 +1,132 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Undo/redo journal for {@link UserDB}, kept in a fixed-size ring buffer.
+ *
+ * <p>A single-binding edit is stored as its action id plus the old and new shortcuts packed into
+ * longs. Edits that replace many bindings at once (restore defaults, import) are stored as one
+ * entry holding the override snapshots from before and after, which are immutable and therefore
+ * shared rather than copied. When the buffer is full the oldest entry is dropped.
+ */
+final class BindingHistory {
+  private final String[] ids;
+  private final long[] oldStrokes;
+  private final long[] newStrokes;
+  private final Snapshot[] snapshots;
+
+  private int first;
+  private int undoable;
+  private int redoable;
+  private Runnable onChange = () -> {};
+
+  record Snapshot(
+      Map<String, Optional<Shortcut>> before, Map<String, Optional<Shortcut>> after) {}
+
+  /**
+   * One journal entry, oriented in the direction it should be applied: for an undo {@code to} is
+   * the state before the edit. Either {@code id} or {@code snapshot} is set.
+   */
+  record Step(String id, long to, Map<String, Optional<Shortcut>> snapshot) {}
+
+  BindingHistory(int capacity) {
+    this.ids = new String[capacity];
+    this.oldStrokes = new long[capacity];
+    this.newStrokes = new long[capacity];
+    this.snapshots = new Snapshot[capacity];
+  }
+
+  /** Runs {@code onChange} whenever what can be undone or redone may have changed. */
+  void onChange(Runnable onChange) {
+    this.onChange = onChange;
+  }
+
+  void recordChange(String id, long oldStroke, long newStroke) {
+    int slot = append();
+    ids[slot] = id;
+    oldStrokes[slot] = oldStroke;
+    newStrokes[slot] = newStroke;
+    onChange.run();
+  }
+
+  void recordSnapshot(
+      Map<String, Optional<Shortcut>> before, Map<String, Optional<Shortcut>> after) {
+    int slot = append();
+    snapshots[slot] = new Snapshot(before, after);
+    onChange.run();
+  }
+
+  // New edits discard anything that could have been redone.
+  private int append() {
+    int capacity = ids.length;
+    for (int i = 0; i < redoable; i++) {
+      clear(slot(undoable + i));
+    }
+    redoable = 0;
+    if (undoable == capacity) {
+      clear(first);
+      first = (first + 1) % capacity;
+      undoable--;
+    }
+    int slot = slot(undoable);
+    undoable++;
+    return slot;
+  }
+
+  boolean canUndo() {
+    return undoable > 0;
+  }
+
+  boolean canRedo() {
+    return redoable > 0;
+  }
+
+  Step undo() {
+    if (undoable == 0) {
+      return null;
+    }
+    undoable--;
+    redoable++;
+    onChange.run();
+    int slot = slot(undoable);
+    Snapshot snapshot = snapshots[slot];
+    return snapshot != null
+        ? new Step(null, 0L, snapshot.before())
+        : new Step(ids[slot], oldStrokes[slot], null);
+  }
+
+  Step redo() {
+    if (redoable == 0) {
+      return null;
+    }
+    int slot = slot(undoable);
+    undoable++;
+    redoable--;
+    onChange.run();
+    Snapshot snapshot = snapshots[slot];
+    return snapshot != null
+        ? new Step(null, 0L, snapshot.after())
+        : new Step(ids[slot], newStrokes[slot], null);
+  }
+
+  void clear() {
+    for (int i = 0; i < ids.length; i++) {
+      clear(i);
+    }
+    first = 0;
+    undoable = 0;
+    redoable = 0;
+    onChange.run();
+  }
+
+  private int slot(int offset) {
+    return (first + offset) % ids.length;
+  }
+
+  private void clear(int slot) {
+    ids[slot] = null;
+    snapshots[slot] = null;
+  }
+}
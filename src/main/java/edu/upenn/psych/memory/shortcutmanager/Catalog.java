@@ -0,0 +1,146 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Immutable action catalog stored column by column rather than as one {@link XAction} per action.
+ *
+ * <p>Strings are deduplicated while the catalog is built, so the class name and tooltip shared by
+ * the actions of a multiact class are held once, and each id is computed once instead of on every
+ * {@link XAction#getId()}. Lookups by id go through a precomputed index. {@link #get} builds a
+ * short-lived {@code XAction} view; hot paths should use the column accessors instead.
+ */
+public final class Catalog extends AbstractList<XAction> implements RandomAccess {
+  private final String[] classNames;
+  private final String[] enumValues;
+  private final String[] names;
+  private final String[] tooltips;
+  private final String[] categories;
+  private final Shortcut[] shortcuts;
+  private final String[] ids;
+  private final Map<String, Integer> indexById;
+
+  private Catalog(List<XAction> xactions) {
+    int n = xactions.size();
+    this.classNames = new String[n];
+    this.enumValues = new String[n];
+    this.names = new String[n];
+    this.tooltips = new String[n];
+    this.categories = new String[n];
+    this.shortcuts = new Shortcut[n];
+    this.ids = new String[n];
+    this.indexById = new HashMap<>(Math.max(16, n * 4 / 3 + 1));
+
+    Map<String, String> pool = new HashMap<>();
+    for (int i = 0; i < n; i++) {
+      XAction xaction = xactions.get(i);
+      classNames[i] = intern(pool, xaction.className());
+      enumValues[i] = intern(pool, xaction.enumValue());
+      names[i] = intern(pool, xaction.name());
+      tooltips[i] = intern(pool, xaction.tooltip());
+      categories[i] = intern(pool, xaction.category());
+      shortcuts[i] = xaction.shortcut();
+      // Without an enum value the id is the class name itself, so share that instance.
+      ids[i] = enumValues[i] == null ? classNames[i] : intern(pool, xaction.getId());
+      indexById.putIfAbsent(ids[i], i);
+    }
+  }
+
+  /** Returns the list itself if it is already a catalog, otherwise a compact copy of it. */
+  public static Catalog of(List<XAction> xactions) {
+    return xactions instanceof Catalog catalog ? catalog : new Catalog(xactions);
+  }
+
+  private static String intern(Map<String, String> pool, String s) {
+    if (s == null) {
+      return null;
+    }
+    String pooled = pool.putIfAbsent(s, s);
+    return pooled != null ? pooled : s;
+  }
+
+  @Override
+  public XAction get(int index) {
+    return new XAction(
+        classNames[index],
+        enumValues[index],
+        names[index],
+        tooltips[index],
+        shortcuts[index],
+        categories[index]);
+  }
+
+  @Override
+  public int size() {
+    return ids.length;
+  }
+
+  public String id(int index) {
+    return ids[index];
+  }
+
+  public String name(int index) {
+    return names[index];
+  }
+
+  public String className(int index) {
+    return classNames[index];
+  }
+
+  public String category(int index) {
+    return categories[index];
+  }
+
+  public Shortcut shortcut(int index) {
+    return shortcuts[index];
+  }
+
+  /** True if the action at {@code index} equals the one at {@code otherIndex} in {@code other}. */
+  public boolean sameAction(int index, Catalog other, int otherIndex) {
+    return Objects.equals(ids[index], other.ids[otherIndex])
+        && Objects.equals(names[index], other.names[otherIndex])
+        && Objects.equals(shortcuts[index], other.shortcuts[otherIndex])
+        && Objects.equals(classNames[index], other.classNames[otherIndex])
+        && Objects.equals(enumValues[index], other.enumValues[otherIndex])
+        && Objects.equals(tooltips[index], other.tooltips[otherIndex])
+        && Objects.equals(categories[index], other.categories[otherIndex]);
+  }
+
+  /** Returns the position of the action with this id, or -1 if there is none. */
+  public int indexOfId(String id) {
+    Integer index = indexById.get(id);
+    return index != null ? index : -1;
+  }
+
+  public boolean containsId(String id) {
+    return indexById.containsKey(id);
+  }
+
+  /** Returns the action with this id, or null if there is none. */
+  public XAction byId(String id) {
+    int index = indexOfId(id);
+    return index >= 0 ? get(index) : null;
+  }
+
+  @Override
+  public int indexOf(Object o) {
+    if (o instanceof XAction xaction) {
+      int index = indexOfId(xaction.getId());
+      if (index >= 0) {
+        // The index holds the first action with each id; later duplicates need a scan.
+        return get(index).equals(xaction) ? index : super.indexOf(o);
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return indexOf(o) >= 0;
+  }
+}
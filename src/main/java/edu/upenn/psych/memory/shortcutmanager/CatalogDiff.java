@@ -0,0 +1,50 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Differences between two versions of the action catalog, matched by {@link XAction#getId()}. */
+public record CatalogDiff(List<XAction> added, List<XAction> removed, List<XAction> changed) {
+
+  /**
+   * Compares the catalogs column by column, so only the actions that differ are built as {@link
+   * XAction}s. Lists that are not {@link Catalog}s are copied into one first.
+   */
+  public static CatalogDiff between(List<XAction> before, List<XAction> after) {
+    Catalog from = Catalog.of(before);
+    Catalog to = Catalog.of(after);
+
+    List<XAction> added = new ArrayList<>();
+    List<XAction> changed = new ArrayList<>();
+    for (int i = 0; i < to.size(); i++) {
+      int previous = from.indexOfId(to.id(i));
+      if (previous < 0) {
+        added.add(to.get(i));
+      } else if (!to.sameAction(i, from, previous)) {
+        changed.add(to.get(i));
+      }
+    }
+
+    List<XAction> removed = new ArrayList<>();
+    for (int i = 0; i < from.size(); i++) {
+      if (!to.containsId(from.id(i))) {
+        removed.add(from.get(i));
+      }
+    }
+    return new CatalogDiff(added, removed, changed);
+  }
+
+  public boolean isEmpty() {
+    return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+  }
+
+  static Set<String> idsOf(List<XAction> xactions) {
+    Set<String> ids = new HashSet<>();
+    for (XAction xaction : xactions) {
+      ids.add(xaction.getId());
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,20 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.util.List;
+
+/**
+ * An action as declared in the actions file, before filtering by operating system.
+ *
+ * @param oses values of the {@code os} attribute, matched against {@code os.name}; empty if the
+ *     action applies everywhere
+ */
+public record CatalogEntry(XAction action, List<String> oses) {
+
+  public boolean appliesTo(String osName) {
+    return oses.isEmpty() || oses.contains(osName);
+  }
+
+  public boolean appliesTo(Platform platform) {
+    return platform.accepts(oses);
+  }
+}
@@ -0,0 +1,118 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reparses an actions file whenever it changes on disk.
+ *
+ * <p>Runs on a daemon thread. Bursts of file events (editors often write a file several times
+ * when saving) are coalesced into a single reparse. A file that fails to parse is reported and
+ * otherwise ignored, so the previous catalog stays in effect until the file is fixed.
+ */
+public final class CatalogWatcher implements Closeable {
+  private static final long DEBOUNCE_MILLIS = 150;
+
+  private final URL url;
+  private final Path file;
+  private final WatchService watchService;
+  private final Consumer<List<XAction>> onReload;
+  private final Thread thread;
+
+  private CatalogWatcher(URL url, Path file, Consumer<List<XAction>> onReload)
+      throws IOException {
+    this.url = url;
+    this.file = file;
+    this.onReload = onReload;
+    this.watchService = file.getFileSystem().newWatchService();
+    file.getParent()
+        .register(
+            watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+    this.thread = new Thread(this::run, "CatalogWatcher " + file.getFileName());
+    thread.setDaemon(true);
+  }
+
+  /**
+   * Starts watching the file behind {@code url}, which must be a {@code file:} URL.
+   *
+   * @param onReload receives each successfully reparsed catalog, on the watcher thread
+   */
+  public static CatalogWatcher watch(URL url, Consumer<List<XAction>> onReload)
+      throws IOException {
+    if (!"file".equals(url.getProtocol())) {
+      throw new IllegalArgumentException("can only watch file: URLs, not " + url);
+    }
+    Path file;
+    try {
+      file = Path.of(url.toURI()).toAbsolutePath();
+    } catch (URISyntaxException e) {
+      throw new IllegalArgumentException("not a valid file URL: " + url, e);
+    }
+    CatalogWatcher watcher = new CatalogWatcher(url, file, onReload);
+    watcher.thread.start();
+    return watcher;
+  }
+
+  private void run() {
+    try {
+      while (true) {
+        if (!isRelevant(watchService.take())) {
+          continue;
+        }
+        Thread.sleep(DEBOUNCE_MILLIS);
+        for (WatchKey key = watchService.poll(); key != null; key = watchService.poll()) {
+          key.pollEvents();
+          key.reset();
+        }
+        reload();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException e) {
+      // closed, we're done
+    }
+  }
+
+  private boolean isRelevant(WatchKey key) {
+    boolean relevant = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW
+          || file.getFileName().equals(event.context())) {
+        relevant = true;
+      }
+    }
+    key.reset();
+    return relevant;
+  }
+
+  private void reload() {
+    List<XAction> xactions;
+    try {
+      // Keep the current catalog until the file is valid again, rather than dropping actions.
+      xactions = new XActionParser(url, XActionParser.Validation.STRICT).getXactions();
+    } catch (RuntimeException e) {
+      Throwable cause = e.getCause() != null ? e.getCause() : e;
+      System.err.println("not reloading " + file + ": " + cause.getMessage());
+      return;
+    }
+    onReload.accept(xactions);
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+    thread.interrupt();
+  }
+}
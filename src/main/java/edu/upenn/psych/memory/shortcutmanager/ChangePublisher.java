@@ -0,0 +1,66 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Predicate;
+
+/**
+ * Fans binding changes out to {@link Flow} subscribers, each with its own filter, executor and
+ * bounded buffer.
+ *
+ * <p>Every subscriber gets a private {@link SubmissionPublisher}, so only the changes it selected
+ * take up its buffer. Publishing never blocks: a subscriber whose buffer is full is failed with
+ * {@link Overflow} and dropped, and can resubscribe after re-reading the keymap. Writers, including
+ * the EDT, therefore never wait on a slow subscriber.
+ */
+final class ChangePublisher {
+
+  /** Signalled to a subscriber that fell further behind than its buffer allows. */
+  static final class Overflow extends IllegalStateException {
+    Overflow(int capacity) {
+      super("subscriber fell more than " + capacity + " changes behind");
+    }
+  }
+
+  private record Subscription(
+      SubmissionPublisher<XActionListener.Update> publisher,
+      Predicate<? super XAction> filter) {}
+
+  private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+  Flow.Publisher<XActionListener.Update> publisher(
+      Predicate<? super XAction> filter, Executor executor, int bufferCapacity) {
+    return subscriber -> {
+      SubmissionPublisher<XActionListener.Update> publisher =
+          new SubmissionPublisher<>(executor, bufferCapacity);
+      // Subscribed first, or a publish in between would take it for cancelled and close it.
+      publisher.subscribe(subscriber);
+      subscriptions.add(new Subscription(publisher, filter));
+    };
+  }
+
+  void publish(List<XActionListener.Update> updates) {
+    if (subscriptions.isEmpty()) {
+      return;
+    }
+    for (Subscription subscription : subscriptions) {
+      SubmissionPublisher<XActionListener.Update> publisher = subscription.publisher();
+      if (!publisher.hasSubscribers()) {
+        // Cancelled.
+        subscriptions.remove(subscription);
+        publisher.close();
+        continue;
+      }
+      for (XActionListener.Update update : updates) {
+        if (subscription.filter().test(update.action()) && publisher.offer(update, null) < 0) {
+          subscriptions.remove(subscription);
+          publisher.closeExceptionally(new Overflow(publisher.getMaxBufferCapacity()));
+          break;
+        }
+      }
+    }
+  }
+}
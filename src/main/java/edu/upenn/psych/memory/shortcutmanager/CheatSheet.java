@@ -0,0 +1,208 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Printable list of a user's effective bindings, grouped like the tree view and sorted by group
+ * and action name.
+ *
+ * <p>Rows are written to the {@link Writer} as they are produced; the only per-action state is the
+ * sort order and group names. Shortcuts are rendered through {@link Platform#display}, so each
+ * distinct shortcut is formatted once however many sheets are generated.
+ */
+final class CheatSheet {
+
+  enum Format {
+    HTML {
+      @Override
+      void begin(Writer out, String title, int nameWidth) throws IOException {
+        out.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>");
+        out.write(escape(title));
+        out.write("</title>\n</head>\n<body>\n<h1>");
+        out.write(escape(title));
+        out.write("</h1>\n");
+      }
+
+      @Override
+      void group(Writer out, String name, int count, boolean first) throws IOException {
+        if (!first) {
+          out.write("</table>\n");
+        }
+        out.write("<h2>" + escape(name) + " (" + count + ")</h2>\n<table>\n");
+      }
+
+      @Override
+      void row(Writer out, String action, String shortcut, int nameWidth) throws IOException {
+        out.write("<tr><td>" + escape(action) + "</td><td>");
+        if (!shortcut.isEmpty()) {
+          out.write("<kbd>" + escape(shortcut) + "</kbd>");
+        }
+        out.write("</td></tr>\n");
+      }
+
+      @Override
+      void end(Writer out, boolean empty) throws IOException {
+        out.write(empty ? "</body>\n</html>\n" : "</table>\n</body>\n</html>\n");
+      }
+
+      private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+          char c = s.charAt(i);
+          switch (c) {
+            case '&' -> sb.append("&amp;");
+            case '<' -> sb.append("&lt;");
+            case '>' -> sb.append("&gt;");
+            case '"' -> sb.append("&quot;");
+            default -> sb.append(c);
+          }
+        }
+        return sb.toString();
+      }
+    },
+
+    MARKDOWN {
+      @Override
+      void begin(Writer out, String title, int nameWidth) throws IOException {
+        out.write("# " + escape(title) + "\n");
+      }
+
+      @Override
+      void group(Writer out, String name, int count, boolean first) throws IOException {
+        out.write("\n## " + escape(name) + " (" + count + ")\n\n");
+        out.write("| Action | Shortcut |\n|---|---|\n");
+      }
+
+      @Override
+      void row(Writer out, String action, String shortcut, int nameWidth) throws IOException {
+        out.write("| " + escape(action) + " | " + escape(shortcut) + " |\n");
+      }
+
+      private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+          char c = s.charAt(i);
+          if ("\\|*_`<[]#".indexOf(c) >= 0) {
+            sb.append('\\');
+          }
+          sb.append(c);
+        }
+        return sb.toString();
+      }
+    },
+
+    TEXT {
+      @Override
+      void begin(Writer out, String title, int nameWidth) throws IOException {
+        out.write(title + "\n" + "=".repeat(title.length()) + "\n");
+      }
+
+      @Override
+      void group(Writer out, String name, int count, boolean first) throws IOException {
+        String heading = name + " (" + count + ")";
+        out.write("\n" + heading + "\n" + "-".repeat(heading.length()) + "\n");
+      }
+
+      @Override
+      void row(Writer out, String action, String shortcut, int nameWidth) throws IOException {
+        out.write(action);
+        if (!shortcut.isEmpty()) {
+          out.write(" ".repeat(nameWidth - action.length() + 2));
+          out.write(shortcut);
+        }
+        out.write('\n');
+      }
+    };
+
+    abstract void begin(Writer out, String title, int nameWidth) throws IOException;
+
+    abstract void group(Writer out, String name, int count, boolean first) throws IOException;
+
+    abstract void row(Writer out, String action, String shortcut, int nameWidth)
+        throws IOException;
+
+    void end(Writer out, boolean empty) throws IOException {}
+
+    static Format forFileName(String fileName) {
+      String lower = fileName.toLowerCase(Locale.ROOT);
+      if (lower.endsWith(".html") || lower.endsWith(".htm")) {
+        return HTML;
+      } else if (lower.endsWith(".md")) {
+        return MARKDOWN;
+      }
+      return TEXT;
+    }
+  }
+
+  private static final String UNBOUND = "";
+  private static final String DEFAULT_PACKAGE = "(default package)";
+
+  private CheatSheet() {}
+
+  /**
+   * Writes the bindings of {@code userdb}'s active profile for every action in {@code catalog}.
+   * Neither flushes nor closes {@code out}.
+   */
+  static void write(
+      List<XAction> catalog,
+      UserDB userdb,
+      Platform platform,
+      ActionTreeModel.Grouping grouping,
+      Format format,
+      String title,
+      Writer out)
+      throws IOException {
+    Catalog actions = Catalog.of(catalog);
+    int n = actions.size();
+    String[] groups = new String[n];
+    Integer[] order = new Integer[n];
+    int nameWidth = 0;
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+      groups[i] = groupOf(actions, i, grouping);
+      nameWidth = Math.max(nameWidth, actions.name(i).length());
+    }
+    Arrays.sort(
+        order,
+        Comparator.<Integer, String>comparing(i -> groups[i])
+            .thenComparing(i -> actions.name(i), String.CASE_INSENSITIVE_ORDER));
+
+    format.begin(out, title, nameWidth);
+    int i = 0;
+    while (i < n) {
+      String group = groups[order[i]];
+      int end = i + 1;
+      while (end < n && groups[order[end]].equals(group)) {
+        end++;
+      }
+      format.group(out, group, end - i, i == 0);
+      for (; i < end; i++) {
+        int index = order[i];
+        Shortcut shortcut = userdb.retrieve(actions.id(index));
+        format.row(
+            out,
+            actions.name(index),
+            shortcut != null ? platform.display(shortcut) : UNBOUND,
+            nameWidth);
+      }
+    }
+    format.end(out, n == 0);
+  }
+
+  private static String groupOf(Catalog actions, int i, ActionTreeModel.Grouping grouping) {
+    if (grouping == ActionTreeModel.Grouping.CATEGORY) {
+      String category = actions.category(i);
+      return category == null || category.isBlank()
+          ? ActionTreeModel.UNCATEGORIZED
+          : category.trim();
+    }
+    String className = actions.className(i);
+    int lastDot = className.lastIndexOf('.');
+    return lastDot < 0 ? DEFAULT_PACKAGE : className.substring(0, lastDot);
+  }
+}
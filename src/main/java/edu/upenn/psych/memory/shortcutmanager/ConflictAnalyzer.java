@@ -0,0 +1,337 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.awt.event.InputEvent;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Checks a whole catalog, with optional user overrides, for shortcut conflicts in one pass.
+ *
+ * <p>The catalog is resolved separately for every known platform, so {@code menu} stands for the
+ * modifier it means there and each platform is checked against its own reserved shortcuts. On each
+ * platform entries are bucketed once by exact shortcut and once by key with normalized modifiers;
+ * every check then only looks inside a bucket, so the cost grows linearly with the catalog.
+ */
+public final class ConflictAnalyzer {
+
+  public enum Kind {
+    /** Two actions share a shortcut on every platform. */
+    DUPLICATE(true),
+    /** Two actions share a shortcut on some platforms, but not on all of them. */
+    OS_COLLISION(true),
+    /** An action uses a shortcut the operating system or desktop reserves for itself. */
+    RESERVED(true),
+    /**
+     * One shortcut's modifiers are a strict subset of another's on the same key. Harmless when the
+     * host matches modifiers exactly, as Swing's input maps do, so reported as a warning.
+     */
+    MODIFIER_SHADOWING(false);
+
+    private final boolean error;
+
+    Kind(boolean error) {
+      this.error = error;
+    }
+
+    public boolean isError() {
+      return error;
+    }
+  }
+
+  /**
+   * @param ids the actions involved; for {@link Kind#MODIFIER_SHADOWING} the shadowing actions
+   *     come first
+   * @param detail the platform concerned, or for shadowing the shorter shortcut
+   */
+  public record Conflict(Kind kind, Shortcut shortcut, List<String> ids, String detail) {
+    @Override
+    public String toString() {
+      return switch (kind) {
+        case DUPLICATE -> shortcut + " is bound to " + String.join(", ", ids);
+        case OS_COLLISION -> shortcut + " is bound to " + String.join(", ", ids) + " on " + detail;
+        case RESERVED -> shortcut + " is reserved on " + detail + " but bound to " + ids.get(0);
+        case MODIFIER_SHADOWING ->
+            detail + " may shadow " + shortcut + " (" + String.join(", ", ids) + ")";
+      };
+    }
+  }
+
+  public static final class Report {
+    private final Map<Kind, List<Conflict>> byKind;
+    // The platform the user's overrides were checked on, or null if there were none.
+    private final Platform overridden;
+
+    private Report(Map<Kind, List<Conflict>> byKind, Platform overridden) {
+      this.byKind = byKind;
+      this.overridden = overridden;
+    }
+
+    public Map<Kind, List<Conflict>> byKind() {
+      return byKind;
+    }
+
+    public List<Conflict> get(Kind kind) {
+      return byKind.getOrDefault(kind, List.of());
+    }
+
+    public boolean hasErrors() {
+      for (Kind kind : byKind.keySet()) {
+        if (kind.isError() && !byKind.get(kind).isEmpty()) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public int size() {
+      int size = 0;
+      for (List<Conflict> conflicts : byKind.values()) {
+        size += conflicts.size();
+      }
+      return size;
+    }
+
+    public void print(PrintStream out) {
+      if (overridden != null) {
+        out.println(
+            "user bindings checked on "
+                + overridden.osName()
+                + " only; other platforms use the catalog's bindings");
+      }
+      for (Map.Entry<Kind, List<Conflict>> entry : byKind.entrySet()) {
+        Kind kind = entry.getKey();
+        out.println(
+            kind + " (" + entry.getValue().size() + (kind.isError() ? " errors)" : " warnings)"));
+        for (Conflict conflict : entry.getValue()) {
+          out.println("  " + conflict);
+        }
+      }
+    }
+  }
+
+  private static final Map<Platform, Set<Shortcut>> RESERVED_SHORTCUTS =
+      Map.of(
+          Platform.MAC_OS,
+          reserved(
+              "meta TAB, meta SPACE, ctrl SPACE, meta H, meta M, meta alt ESCAPE, ctrl meta Q, "
+                  + "meta shift 3, meta shift 4, meta shift 5, meta alt D, "
+                  + "ctrl UP, ctrl DOWN, ctrl LEFT, ctrl RIGHT"),
+          Platform.WINDOWS,
+          reserved(
+              "alt F4, alt TAB, alt SPACE, ctrl ESCAPE, ctrl alt DELETE, ctrl shift ESCAPE, "
+                  + "meta D, meta E, meta L, meta R, meta TAB"),
+          Platform.LINUX,
+          reserved(
+              "alt TAB, alt F2, alt F4, ctrl alt DELETE, ctrl alt T, ctrl alt L, "
+                  + "ctrl alt LEFT, ctrl alt RIGHT"));
+
+  private ConflictAnalyzer() {}
+
+  private static Set<Shortcut> reserved(String internalForms) {
+    Set<Shortcut> shortcuts = new HashSet<>();
+    for (String form : internalForms.split(",\\s*")) {
+      shortcuts.add(Shortcut.fromInternalForm(form));
+    }
+    return Collections.unmodifiableSet(shortcuts);
+  }
+
+  // An action available on the platform being checked, with the shortcut it has there.
+  private record Bound(String id, Shortcut shortcut) {}
+
+  /** Analyzes the catalog read by {@code parser}, resolved for every known platform. */
+  public static Report analyze(XActionParser parser) {
+    return analyze(parser, Map.of());
+  }
+
+  /**
+   * Analyzes the catalog as it is bound in {@code userdb}'s active profile. The overrides were
+   * made on this machine, so they apply to {@link Platform#current()} only; every other platform
+   * is checked with the catalog's own bindings.
+   */
+  public static Report analyze(XActionParser parser, UserDB userdb) {
+    return analyze(parser, userdb.overrides());
+  }
+
+  static Report analyze(XActionParser parser, Map<String, Optional<Shortcut>> overrides) {
+    // The current platform first, so a conflict found on several shows its shortcut as here.
+    Map<Platform, List<CatalogEntry>> catalogs = new LinkedHashMap<>();
+    if (Platform.KNOWN.contains(Platform.current())) {
+      catalogs.put(Platform.current(), parser.getCatalog(Platform.current()));
+    }
+    for (Platform platform : Platform.KNOWN) {
+      if (!catalogs.containsKey(platform)) {
+        catalogs.put(platform, parser.getCatalog(platform));
+      }
+    }
+    return analyze(catalogs, overrides);
+  }
+
+  /**
+   * @param catalogs every entry in the file as resolved for each platform to check; an entry is
+   *     only checked on the platforms it applies to
+   * @param overrides applied on {@link Platform#current()} only
+   */
+  static Report analyze(
+      Map<Platform, List<CatalogEntry>> catalogs, Map<String, Optional<Shortcut>> overrides) {
+    long start = Metrics.start();
+    Map<Kind, List<Conflict>> byKind = new EnumMap<>(Kind.class);
+    // The same actions usually conflict on several platforms; each set is reported once.
+    Map<List<String>, Map<Platform, Shortcut>> collisions = new LinkedHashMap<>();
+    // Each action's shortcut on every platform checked so far that it is bound on.
+    Map<String, List<Shortcut>> strokes = new LinkedHashMap<>();
+    Set<List<String>> shadowing = new HashSet<>();
+
+    for (Map.Entry<Platform, List<CatalogEntry>> resolved : catalogs.entrySet()) {
+      Platform platform = resolved.getKey();
+      Set<Shortcut> reserved = RESERVED_SHORTCUTS.getOrDefault(platform, Set.of());
+      Map<Shortcut, List<String>> byShortcut = new LinkedHashMap<>();
+      Map<Long, List<Bound>> byKeyAndMask = new HashMap<>();
+      Map<String, Optional<Shortcut>> bound =
+          platform.equals(Platform.current()) ? overrides : Map.of();
+
+      for (CatalogEntry entry : resolved.getValue()) {
+        if (!entry.appliesTo(platform)) {
+          continue;
+        }
+        String id = idOf(entry);
+        Optional<Shortcut> override = bound.get(id);
+        Shortcut shortcut = override != null ? override.orElse(null) : entry.action().shortcut();
+        if (shortcut == null) {
+          continue;
+        }
+        byShortcut.computeIfAbsent(shortcut, s -> new ArrayList<>(1)).add(id);
+        strokes.computeIfAbsent(id, k -> new ArrayList<>(catalogs.size())).add(shortcut);
+        byKeyAndMask
+            .computeIfAbsent(keyAndMask(shortcut), k -> new ArrayList<>(1))
+            .add(new Bound(id, shortcut));
+        if (reserved.contains(shortcut)) {
+          add(byKind, new Conflict(Kind.RESERVED, shortcut, List.of(id), platform.osName()));
+        }
+      }
+
+      for (Map.Entry<Shortcut, List<String>> bucket : byShortcut.entrySet()) {
+        if (bucket.getValue().size() > 1) {
+          collisions
+              .computeIfAbsent(bucket.getValue(), ids -> new LinkedHashMap<>())
+              .put(platform, bucket.getKey());
+        }
+      }
+
+      for (Map.Entry<Long, List<Bound>> bucket : byKeyAndMask.entrySet()) {
+        long key = bucket.getKey();
+        int mask = (int) (key & 0xF);
+        if (mask == 0) {
+          continue;
+        }
+        // Every strict subset of this mask, largest first, ending with the bare key.
+        int sub = mask;
+        do {
+          sub = (sub - 1) & mask;
+          List<Bound> shorter = byKeyAndMask.get((key & ~0xFL) | sub);
+          if (shorter != null) {
+            checkShadowing(byKind, shadowing, shorter, bucket.getValue());
+          }
+        } while (sub != 0);
+      }
+    }
+
+    // Actions bound alike on every platform are duplicates; collisions among only those are not
+    // reported again per platform.
+    Map<List<Shortcut>, List<String>> alike = new LinkedHashMap<>();
+    for (Map.Entry<String, List<Shortcut>> bound : strokes.entrySet()) {
+      if (bound.getValue().size() == catalogs.size()) {
+        alike.computeIfAbsent(bound.getValue(), k -> new ArrayList<>(1)).add(bound.getKey());
+      }
+    }
+    Set<String> duplicated = new HashSet<>();
+    for (Map.Entry<List<Shortcut>, List<String>> group : alike.entrySet()) {
+      if (group.getValue().size() > 1) {
+        List<String> ids = List.copyOf(group.getValue());
+        add(byKind, new Conflict(Kind.DUPLICATE, group.getKey().get(0), ids, null));
+        duplicated.addAll(ids);
+      }
+    }
+
+    for (Map.Entry<List<String>, Map<Platform, Shortcut>> collision : collisions.entrySet()) {
+      List<String> ids = List.copyOf(collision.getKey());
+      if (sameGroup(ids, strokes, duplicated)) {
+        continue;
+      }
+      Map<Platform, Shortcut> on = collision.getValue();
+      for (Map.Entry<Platform, Shortcut> platform : on.entrySet()) {
+        add(
+            byKind,
+            new Conflict(Kind.OS_COLLISION, platform.getValue(), ids, platform.getKey().osName()));
+      }
+    }
+
+    Metrics.stop(Metrics.Op.CONFLICT_CHECK, start);
+    boolean overridden = !overrides.isEmpty() && catalogs.containsKey(Platform.current());
+    return new Report(byKind, overridden ? Platform.current() : null);
+  }
+
+  private static boolean sameGroup(
+      List<String> ids, Map<String, List<Shortcut>> strokes, Set<String> duplicated) {
+    List<Shortcut> first = strokes.get(ids.get(0));
+    for (String id : ids) {
+      if (!duplicated.contains(id) || !strokes.get(id).equals(first)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void checkShadowing(
+      Map<Kind, List<Conflict>> byKind,
+      Set<List<String>> reported,
+      List<Bound> shorter,
+      List<Bound> longer) {
+    for (Bound s : shorter) {
+      for (Bound l : longer) {
+        List<String> ids = List.of(s.id(), l.id());
+        if (reported.add(ids)) {
+          String shadowing = s.shortcut().toString();
+          add(byKind, new Conflict(Kind.MODIFIER_SHADOWING, l.shortcut(), ids, shadowing));
+        }
+      }
+    }
+  }
+
+  // The packed stroke with its modifiers replaced by a 4-bit shift/ctrl/meta/alt mask.
+  @SuppressWarnings("deprecation") // KeyStroke modifiers may carry either mask generation
+  private static long keyAndMask(Shortcut shortcut) {
+    int m = shortcut.stroke.getModifiers();
+    int mask = 0;
+    if ((m & (InputEvent.SHIFT_DOWN_MASK | InputEvent.SHIFT_MASK)) != 0) {
+      mask |= 1;
+    }
+    if ((m & (InputEvent.CTRL_DOWN_MASK | InputEvent.CTRL_MASK)) != 0) {
+      mask |= 2;
+    }
+    if ((m & (InputEvent.META_DOWN_MASK | InputEvent.META_MASK)) != 0) {
+      mask |= 4;
+    }
+    if ((m & (InputEvent.ALT_DOWN_MASK | InputEvent.ALT_MASK)) != 0) {
+      mask |= 8;
+    }
+    long packed = Shortcut.pack(shortcut) & ~(0xFFFFFFL << 32);
+    return (packed << 4) | mask;
+  }
+
+  private static String idOf(CatalogEntry entry) {
+    return entry.action().getId();
+  }
+
+  private static void add(Map<Kind, List<Conflict>> byKind, Conflict conflict) {
+    byKind.computeIfAbsent(conflict.kind(), k -> new ArrayList<>()).add(conflict);
+  }
+}
@@ -0,0 +1,67 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.prefs.AbstractPreferences;
+
+/**
+ * A preferences tree held entirely in memory, for running {@link UserDB} without touching the
+ * user's real store. Nothing is persisted; {@code flush} and {@code sync} do nothing.
+ *
+ * <p>Keys and children are kept sorted, so iteration order is the same on every run. Locking is
+ * {@link AbstractPreferences}'s own per-node lock.
+ */
+final class InMemoryPreferences extends AbstractPreferences {
+  private final Map<String, String> values = new TreeMap<>();
+  private final Map<String, InMemoryPreferences> children = new TreeMap<>();
+
+  /** A new, empty root. */
+  InMemoryPreferences() {
+    this(null, "");
+  }
+
+  private InMemoryPreferences(InMemoryPreferences parent, String name) {
+    super(parent, name);
+  }
+
+  @Override
+  protected void putSpi(String key, String value) {
+    values.put(key, value);
+  }
+
+  @Override
+  protected String getSpi(String key) {
+    return values.get(key);
+  }
+
+  @Override
+  protected void removeSpi(String key) {
+    values.remove(key);
+  }
+
+  @Override
+  protected void removeNodeSpi() {
+    ((InMemoryPreferences) parent()).children.remove(name());
+  }
+
+  @Override
+  protected String[] keysSpi() {
+    return values.keySet().toArray(new String[0]);
+  }
+
+  @Override
+  protected String[] childrenNamesSpi() {
+    return children.keySet().toArray(new String[0]);
+  }
+
+  @Override
+  protected AbstractPreferences childSpi(String name) {
+    return children.computeIfAbsent(name, n -> new InMemoryPreferences(this, n));
+  }
+
+  @Override
+  protected void syncSpi() {}
+
+  @Override
+  protected void flushSpi() {}
+}
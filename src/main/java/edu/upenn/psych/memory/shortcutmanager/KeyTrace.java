@@ -0,0 +1,235 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.awt.Component;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+
+/**
+ * Recorded streams of the key events delivered to the shortcut table, and headless replay of
+ * them through the real capture logic.
+ *
+ * <p>A trace is a 4-byte magic number and the name of the keyboard layout it was recorded on,
+ * followed by one fixed 16-byte record per event: event id, key code, extended modifiers, key
+ * char, key location and the selected row when the event arrived. Key codes are stored as the
+ * layout reported them and replay translates them with that same layout, so a trace binds the
+ * same keys whatever layout it is replayed on. Timing is not recorded; replay runs at full speed
+ * and measures how long the table's key listeners take with each event.
+ */
+final class KeyTrace {
+  private static final int MAGIC = 0x534b5432; // "SKT2"
+  private static final String NAMESPACE = "/edu/upenn/psych/memory/shortcutmanager-replay";
+
+  private KeyTrace() {}
+
+  /** A recorded trace: the layout its key codes come from, and its events. */
+  record Trace(KeyboardLayout layout, List<Event> events) {}
+
+  record Event(int id, int keyCode, int modifiersEx, char keyChar, int location, int row) {
+
+    // Keeps the extended key code where there is one, which identifies keys such as ü.
+    static Event of(KeyEvent e, int row) {
+      int keyCode = e.getExtendedKeyCode() != 0 ? e.getExtendedKeyCode() : e.getKeyCode();
+      return new Event(
+          e.getID(), keyCode, e.getModifiersEx(), e.getKeyChar(), e.getKeyLocation(), row);
+    }
+
+    KeyEvent toKeyEvent(Component source) {
+      return new KeyEvent(source, id, 0L, modifiersEx, keyCode, keyChar, location);
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+      out.writeByte(id - KeyEvent.KEY_FIRST);
+      out.writeInt(keyCode);
+      out.writeInt(modifiersEx);
+      out.writeChar(keyChar);
+      out.writeByte(location);
+      out.writeInt(row);
+    }
+
+    private static Event read(DataInputStream in) throws IOException {
+      int id = in.readByte() + KeyEvent.KEY_FIRST;
+      int keyCode = in.readInt();
+      int modifiersEx = in.readInt();
+      char keyChar = in.readChar();
+      int location = in.readByte();
+      int row = in.readInt();
+      return new Event(id, keyCode, modifiersEx, keyChar, location, row);
+    }
+  }
+
+  /** Appends the key events a table receives to a trace file, flushing after each one. */
+  static final class Recorder implements KeyListener, Closeable {
+    private final JTable table;
+    private final DataOutputStream out;
+
+    private Recorder(JTable table, DataOutputStream out) {
+      this.table = table;
+      this.out = out;
+    }
+
+    static Recorder attach(JTable table, KeyboardLayout layout, Path file) throws IOException {
+      DataOutputStream out =
+          new DataOutputStream(
+              new BufferedOutputStream(
+                  Files.newOutputStream(
+                      file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)));
+      out.writeInt(MAGIC);
+      out.writeUTF(layout.name());
+      out.flush();
+      Recorder recorder = new Recorder(table, out);
+      table.addKeyListener(recorder);
+      return recorder;
+    }
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+      record(e);
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+      record(e);
+    }
+
+    @Override
+    public void keyTyped(KeyEvent e) {
+      record(e);
+    }
+
+    private void record(KeyEvent e) {
+      try {
+        // Model rows, so a trace replays the same way whatever the table was sorted by.
+        int row = table.getSelectedRow();
+        Event.of(e, row >= 0 ? table.convertRowIndexToModel(row) : row).write(out);
+        out.flush();
+      } catch (IOException ex) {
+        System.err.println("stopped recording key events: " + ex);
+        table.removeKeyListener(this);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      table.removeKeyListener(this);
+      out.close();
+    }
+  }
+
+  static Trace read(Path file) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(file + " is not a key trace");
+      }
+      String name = in.readUTF();
+      KeyboardLayout layout = KeyboardLayout.named(name);
+      if (layout == null) {
+        throw new IOException(file + " was recorded on unknown keyboard layout " + name);
+      }
+      List<Event> events = new ArrayList<>();
+      while (true) {
+        try {
+          events.add(Event.read(in));
+        } catch (EOFException e) {
+          return new Trace(layout, events);
+        }
+      }
+    }
+  }
+
+  /**
+   * Outcome of a replay.
+   *
+   * @param nanos time the table's key listeners took with each event, sorted ascending
+   * @param overrides the bindings the events left behind, by id
+   * @param rejected messages for shortcuts that were refused because they were already taken
+   */
+  record Result(long[] nanos, Map<String, Optional<Shortcut>> overrides, List<String> rejected) {
+
+    long percentile(double p) {
+      return nanos.length == 0 ? 0 : nanos[(int) Math.ceil(p * nanos.length) - 1];
+    }
+  }
+
+  /**
+   * Feeds the trace's events to a fresh table over {@code catalog}, starting from the default
+   * bindings in an {@link InMemoryPreferences} tree, so the user's store is never touched. Keys
+   * are translated with the trace's layout, not this machine's. The table is built and driven on
+   * the event dispatch thread, as it is in the window.
+   */
+  static Result replay(Trace trace, List<XAction> catalog) throws IOException {
+    if (SwingUtilities.isEventDispatchThread()) {
+      return replayHere(trace, catalog);
+    }
+    AtomicReference<Result> result = new AtomicReference<>();
+    try {
+      SwingUtilities.invokeAndWait(() -> result.set(replayHere(trace, catalog)));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("replay interrupted");
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      if (e.getCause() instanceof Error cause) {
+        throw cause;
+      }
+      throw new IOException(e.getCause());
+    }
+    return result.get();
+  }
+
+  private static Result replayHere(Trace trace, List<XAction> catalog) {
+    List<Event> events = trace.events();
+    UserDB userdb =
+        new UserDB(new InMemoryPreferences(), NAMESPACE, catalog, (xaction, oldShortcut) -> {});
+    ShortcutTable table = new ShortcutTable(catalog, userdb, (xaction, oldShortcut) -> {});
+    List<String> rejected = new ArrayList<>();
+    table.setConflictHandler(rejected::add);
+    table.useKeyboardLayout(trace.layout());
+    KeyListener[] listeners = table.getKeyListeners();
+
+    long[] nanos = new long[events.size()];
+    for (int i = 0; i < nanos.length; i++) {
+      Event event = events.get(i);
+      if (event.row() >= 0 && event.row() < table.getRowCount()) {
+        table.setRowSelectionInterval(event.row(), event.row());
+      } else {
+        table.clearSelection();
+      }
+      KeyEvent e = event.toKeyEvent(table);
+      long start = System.nanoTime();
+      for (KeyListener listener : listeners) {
+        switch (event.id()) {
+          case KeyEvent.KEY_PRESSED -> listener.keyPressed(e);
+          case KeyEvent.KEY_RELEASED -> listener.keyReleased(e);
+          default -> listener.keyTyped(e);
+        }
+      }
+      nanos[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(nanos);
+    return new Result(nanos, new TreeMap<>(userdb.overrides()), rejected);
+  }
+}
@@ -0,0 +1,183 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.event.KeyEvent;
+import java.awt.im.InputContext;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps the keys of the main typing block between a keyboard layout and their physical positions,
+ * so that shortcuts on punctuation and dead keys are bound by position and shown with the label
+ * the user actually sees.
+ *
+ * <p>Bindings are stored with the key code the same position has on a US keyboard, the canonical
+ * code. Capturing {@code ü} on a German keyboard therefore stores {@code OPEN_BRACKET}, and a
+ * catalog default of {@code OPEN_BRACKET} is displayed as {@code Ü} there. Letters and digits are
+ * left alone: Java reports them by their label on every layout, and users expect Ctrl+Z to be the
+ * key marked Z.
+ *
+ * <p>Each layout's tables are built once, so capture and display are a hash lookup.
+ */
+public final class KeyboardLayout {
+
+  // Positions of the main block, named as in XKB: row E is the digit row, B the bottom row.
+  // LSGT is the extra key next to left shift on ISO keyboards.
+  private static final List<String> POSITIONS =
+      List.of(
+          "TLDE", "AE01", "AE02", "AE03", "AE04", "AE05", "AE06", "AE07", "AE08", "AE09", "AE10",
+          "AE11", "AE12", "AD01", "AD02", "AD03", "AD04", "AD05", "AD06", "AD07", "AD08", "AD09",
+          "AD10", "AD11", "AD12", "AC01", "AC02", "AC03", "AC04", "AC05", "AC06", "AC07", "AC08",
+          "AC09", "AC10", "AC11", "BKSL", "LSGT", "AB01", "AB02", "AB03", "AB04", "AB05", "AB06",
+          "AB07", "AB08", "AB09", "AB10");
+
+  private static final Map<String, Integer> DEAD_KEYS =
+      Map.of(
+          "dead^", KeyEvent.VK_DEAD_CIRCUMFLEX,
+          "dead´", KeyEvent.VK_DEAD_ACUTE,
+          "dead`", KeyEvent.VK_DEAD_GRAVE,
+          "dead¨", KeyEvent.VK_DEAD_DIAERESIS,
+          "dead~", KeyEvent.VK_DEAD_TILDE);
+
+  // Unshifted output of each position, in POSITIONS order. "dead" plus an accent is a dead key and
+  // "none" means the layout has no key there. Only layouts with letters where US has letters can
+  // be described: elsewhere, as on AZERTY, a punctuation key and a letter would share a code.
+  public static final KeyboardLayout US =
+      new KeyboardLayout(
+          "us", "` 1 2 3 4 5 6 7 8 9 0 - = q w e r t y u i o p [ ] a s d f g h j k l ; ' \\ none"
+              + " z x c v b n m , . /");
+  public static final KeyboardLayout UK =
+      new KeyboardLayout(
+          "uk", "` 1 2 3 4 5 6 7 8 9 0 - = q w e r t y u i o p [ ] a s d f g h j k l ; ' # \\"
+              + " z x c v b n m , . /");
+  public static final KeyboardLayout GERMAN =
+      new KeyboardLayout(
+          "de", "dead^ 1 2 3 4 5 6 7 8 9 0 ß dead´ q w e r t z u i o p ü +"
+              + " a s d f g h j k l ö ä # < y x c v b n m , . -");
+
+  public static final List<KeyboardLayout> KNOWN = List.of(US, UK, GERMAN);
+
+  private static volatile KeyboardLayout current;
+
+  private final String name;
+  private final String[] labels = new String[POSITIONS.size()];
+  // Key code this layout reports for a position, and the reverse.
+  private final int[] reported = new int[POSITIONS.size()];
+  private final Map<Integer, Integer> positionByReported = new HashMap<>();
+
+  private KeyboardLayout(String name, String keys) {
+    this.name = name;
+    String[] tokens = keys.split(" ");
+    if (tokens.length != POSITIONS.size()) {
+      throw new IllegalArgumentException(name + " has " + tokens.length + " keys");
+    }
+    for (int position = 0; position < tokens.length; position++) {
+      String token = tokens[position];
+      if (token.equals("none")) {
+        continue;
+      }
+      Integer dead = DEAD_KEYS.get(token);
+      int code = dead != null ? dead : KeyEvent.getExtendedKeyCodeForChar(token.codePointAt(0));
+      String label = dead != null ? token.substring("dead".length()) : token;
+      if (US != null && isLetter(code) != isLetter(US.reported[position])) {
+        throw new IllegalArgumentException(name + " moves letters at " + POSITIONS.get(position));
+      }
+      // Per character, so that ß stays one letter.
+      labels[position] = Character.toString(Character.toUpperCase(label.codePointAt(0)));
+      reported[position] = code;
+      positionByReported.putIfAbsent(code, position);
+    }
+  }
+
+  /**
+   * The layout named by {@code -Dshortcutmanager.keyboardLayout} (us, uk or de), otherwise the
+   * one matching the input method's locale, otherwise {@link #US}.
+   */
+  public static KeyboardLayout current() {
+    KeyboardLayout layout = current;
+    if (layout == null) {
+      layout = detect();
+      current = layout;
+    }
+    return layout;
+  }
+
+  public static KeyboardLayout named(String name) {
+    for (KeyboardLayout layout : KNOWN) {
+      if (layout.name.equalsIgnoreCase(name)) {
+        return layout;
+      }
+    }
+    return null;
+  }
+
+  private static KeyboardLayout detect() {
+    KeyboardLayout named = named(System.getProperty("shortcutmanager.keyboardLayout", ""));
+    if (named != null) {
+      return named;
+    }
+    Locale locale = null;
+    if (!GraphicsEnvironment.isHeadless()) {
+      InputContext context = InputContext.getInstance();
+      locale = context != null ? context.getLocale() : null;
+    }
+    if (locale == null) {
+      locale = Locale.getDefault();
+    }
+    return switch (locale.getLanguage()) {
+      case "de" -> GERMAN;
+      case "en" -> "GB".equals(locale.getCountry()) ? UK : US;
+      default -> US;
+    };
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /**
+   * The code to store for a key pressed on this layout. Pass {@link KeyEvent#getExtendedKeyCode},
+   * which identifies keys that have no {@code VK_} constant of their own, such as {@code ü}.
+   */
+  public int toCanonical(int keyCode) {
+    if (isLetterOrDigit(keyCode)) {
+      return keyCode;
+    }
+    Integer position = positionByReported.get(keyCode);
+    if (position == null) {
+      return keyCode;
+    }
+    int canonical = US.reported[position];
+    return canonical != 0 ? canonical : KeyEvent.VK_LESS;
+  }
+
+  /**
+   * The label of the key with this canonical code on this layout, or null for keys outside the
+   * main block and for letters and digits, which are labelled by their key code everywhere.
+   */
+  public String label(int canonicalKeyCode) {
+    if (isLetterOrDigit(canonicalKeyCode)) {
+      return null;
+    }
+    Integer position =
+        canonicalKeyCode == KeyEvent.VK_LESS
+            ? Integer.valueOf(POSITIONS.indexOf("LSGT"))
+            : US.positionByReported.get(canonicalKeyCode);
+    return position != null ? labels[position] : null;
+  }
+
+  private static boolean isLetterOrDigit(int keyCode) {
+    return (keyCode >= KeyEvent.VK_0 && keyCode <= KeyEvent.VK_9) || isLetter(keyCode);
+  }
+
+  private static boolean isLetter(int keyCode) {
+    return keyCode >= KeyEvent.VK_A && keyCode <= KeyEvent.VK_Z;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,540 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Differential check of {@link UserDB}: random sequences of edits are applied both to a UserDB
+ * over {@link InMemoryPreferences} and to a deliberately naive model, and the two are compared
+ * with {@link KeymapSnapshot} after every step.
+ *
+ * <p>The model keeps every profile as a full map from id to shortcut and records each edit as a
+ * copy of the whole map before and after, so it shares none of UserDB's override diffing, packed
+ * history or lazy profile loading. Listener calls are checked as well: replaying them onto the
+ * initial bindings must give the same keymap. A failing sequence is shrunk by dropping steps while
+ * it still fails, and is reproducible from its seed.
+ */
+final class KeymapCheck {
+  private static final String NAMESPACE = "/edu/upenn/psych/memory/shortcutmanager-check";
+  private static final List<String> PROFILES = List.of(UserDB.DEFAULT_PROFILE, "work", "laptop");
+  // UserDB's undo depth.
+  private static final int HISTORY_CAPACITY = 256;
+
+  enum Kind {
+    STORE(35),
+    STORE_ALL(10),
+    RESET(5),
+    UNDO(15),
+    REDO(10),
+    SWITCH_PROFILE(8),
+    DELETE_PROFILE(4),
+    ROUND_TRIP(5),
+    RELOAD(8),
+    LEGACY_CATALOG_CHANGE(4);
+
+    private final int weight;
+
+    Kind(int weight) {
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * One step of a sequence. {@code batch} is set for {@link Kind#STORE_ALL}, {@code profile} for
+   * the profile operations and {@code format} for {@link Kind#ROUND_TRIP}, an export followed by a
+   * replacing import. {@link Kind#LEGACY_CATALOG_CHANGE} mirrors the default of {@code id} into the
+   * store as older versions did, reloads, and briefly unbinds that default in the catalog.
+   */
+  record Op(
+      Kind kind,
+      String id,
+      Shortcut shortcut,
+      Map<String, Shortcut> batch,
+      String profile,
+      KeymapFormat format) {
+
+    @Override
+    public String toString() {
+      return switch (kind) {
+        case STORE -> "store " + id + " " + describe(shortcut);
+        case STORE_ALL -> {
+          StringBuilder sb = new StringBuilder("storeAll");
+          batch.forEach(
+              (key, value) -> sb.append(' ').append(key).append('=').append(describe(value)));
+          yield sb.toString();
+        }
+        case SWITCH_PROFILE -> "switchProfile " + profile;
+        case DELETE_PROFILE -> "deleteProfile " + profile;
+        case ROUND_TRIP -> "export and import " + format;
+        case LEGACY_CATALOG_CHANGE -> "mirror " + id + " and unbind its default";
+        default -> kind.name().toLowerCase();
+      };
+    }
+
+    private static String describe(Shortcut shortcut) {
+      return shortcut != null ? "[" + shortcut.getInternalForm().trim() + "]" : "#";
+    }
+  }
+
+  /**
+   * A sequence on which UserDB and the model disagreed.
+   *
+   * @param ops the shrunk sequence; the last step is where they first disagree
+   */
+  record Failure(long seed, List<Op> ops, String message) {}
+
+  /**
+   * Outcome of {@link #check}.
+   *
+   * @param nanos time each sequence took against UserDB and the model, in sequence order
+   * @param failure the first failing sequence, or null
+   */
+  record Result(int sequences, long operations, long[] nanos, Failure failure) {
+
+    long percentile(double p) {
+      long[] sorted = nanos.clone();
+      Arrays.sort(sorted);
+      return sorted.length == 0 ? 0 : sorted[(int) Math.ceil(p * sorted.length) - 1];
+    }
+
+    int slowest() {
+      int slowest = 0;
+      for (int i = 1; i < nanos.length; i++) {
+        if (nanos[i] > nanos[slowest]) {
+          slowest = i;
+        }
+      }
+      return slowest;
+    }
+  }
+
+  private final List<XAction> catalog;
+  private final Map<String, XAction> byId = new LinkedHashMap<>();
+  private final Map<String, Shortcut> defaults = new HashMap<>();
+  private final List<String> ids;
+  private final List<Shortcut> shortcuts;
+  private final int totalWeight;
+
+  KeymapCheck(List<XAction> catalog) {
+    this.catalog = catalog;
+    // Shortcuts already in the catalog, so batches run into conflicts, plus some that are not.
+    Set<Shortcut> pool = new LinkedHashSet<>();
+    for (XAction xaction : catalog) {
+      byId.put(xaction.getId(), xaction);
+      defaults.put(xaction.getId(), xaction.shortcut());
+      if (xaction.shortcut() != null) {
+        pool.add(xaction.shortcut());
+      }
+    }
+    if (byId.isEmpty()) {
+      throw new IllegalArgumentException("the catalog has no actions to check");
+    }
+    for (int f = 1; f <= 6; f++) {
+      pool.add(Shortcut.fromInternalForm("ctrl shift pressed F" + f));
+    }
+    this.ids = List.copyOf(byId.keySet());
+    this.shortcuts = List.copyOf(pool);
+    this.totalWeight = Arrays.stream(Kind.values()).mapToInt(kind -> kind.weight).sum();
+  }
+
+  /**
+   * Checks {@code sequences} random sequences of {@code length} steps each. Sequence {@code i}
+   * is generated from {@code seed + i}, and checking stops at the first failure.
+   */
+  Result check(long seed, int sequences, int length) {
+    long[] nanos = new long[sequences];
+    long operations = 0;
+    for (int i = 0; i < sequences; i++) {
+      List<Op> ops = generate(seed + i, length);
+      long start = System.nanoTime();
+      String message = run(ops);
+      nanos[i] = System.nanoTime() - start;
+      operations += ops.size();
+      if (message != null) {
+        List<Op> shrunk = shrink(ops);
+        Failure failure = new Failure(seed + i, shrunk, run(shrunk));
+        return new Result(i + 1, operations, Arrays.copyOf(nanos, i + 1), failure);
+      }
+    }
+    return new Result(sequences, operations, nanos, null);
+  }
+
+  /** A random sequence; the same seed always gives the same steps. It ends by reloading. */
+  List<Op> generate(long seed, int length) {
+    SplittableRandom random = new SplittableRandom(seed);
+    List<Op> ops = new ArrayList<>(length + 1);
+    for (int i = 0; i < length; i++) {
+      ops.add(randomOp(random));
+    }
+    ops.add(new Op(Kind.RELOAD, null, null, null, null, null));
+    return ops;
+  }
+
+  private Op randomOp(SplittableRandom random) {
+    int pick = random.nextInt(totalWeight);
+    Kind kind = null;
+    for (Kind candidate : Kind.values()) {
+      pick -= candidate.weight;
+      if (pick < 0) {
+        kind = candidate;
+        break;
+      }
+    }
+    return switch (kind) {
+      case STORE -> {
+        String id = randomId(random);
+        yield new Op(kind, id, randomShortcut(random, id), null, null, null);
+      }
+      case STORE_ALL -> {
+        Map<String, Shortcut> batch = new LinkedHashMap<>();
+        for (int n = 1 + random.nextInt(5); n > 0; n--) {
+          String id = randomId(random);
+          batch.put(id, randomShortcut(random, id));
+        }
+        yield new Op(kind, null, null, batch, null, null);
+      }
+      case LEGACY_CATALOG_CHANGE -> new Op(kind, randomId(random), null, null, null, null);
+      case SWITCH_PROFILE, DELETE_PROFILE ->
+          new Op(kind, null, null, null, PROFILES.get(random.nextInt(PROFILES.size())), null);
+      case ROUND_TRIP ->
+          new Op(
+              kind,
+              null,
+              null,
+              null,
+              null,
+              KeymapFormat.values()[random.nextInt(KeymapFormat.values().length)]);
+      default -> new Op(kind, null, null, null, null, null);
+    };
+  }
+
+  private String randomId(SplittableRandom random) {
+    return ids.get(random.nextInt(ids.size()));
+  }
+
+  // Often the default, sometimes unbound, otherwise any shortcut from the pool.
+  private Shortcut randomShortcut(SplittableRandom random, String id) {
+    int pick = random.nextInt(10);
+    if (pick < 3) {
+      return defaults.get(id);
+    }
+    if (pick < 4) {
+      return null;
+    }
+    return shortcuts.get(random.nextInt(shortcuts.size()));
+  }
+
+  /** Drops steps one at a time for as long as the sequence still fails. */
+  List<Op> shrink(List<Op> ops) {
+    List<Op> current = ops;
+    boolean progress = true;
+    while (progress) {
+      progress = false;
+      for (int i = current.size() - 1; i >= 0; i--) {
+        List<Op> candidate = new ArrayList<>(current);
+        candidate.remove(i);
+        if (run(candidate) != null) {
+          current = candidate;
+          progress = true;
+        }
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Applies {@code ops} to a fresh UserDB and to the model, and returns where they first
+   * disagree, or null if they never do.
+   */
+  String run(List<Op> ops) {
+    InMemoryPreferences root = new InMemoryPreferences();
+    Map<String, Shortcut> observed = new HashMap<>(defaults);
+    List<String> listenerErrors = new ArrayList<>();
+    XActionListener listener =
+        (xaction, oldShortcut) -> {
+          Shortcut previous = observed.put(xaction.getId(), xaction.shortcut());
+          if (!Objects.equals(previous, oldShortcut)) {
+            listenerErrors.add(
+                xaction.getId()
+                    + " was reported changing from "
+                    + oldShortcut
+                    + " but was "
+                    + previous);
+          }
+        };
+    UserDB userdb = new UserDB(root, NAMESPACE, catalog, listener);
+    Model model = new Model();
+
+    for (int step = 0; step < ops.size(); step++) {
+      Op op = ops.get(step);
+      String where = "step " + (step + 1) + " (" + op + "): ";
+      try {
+        if (op.kind() == Kind.RELOAD) {
+          userdb = new UserDB(root, NAMESPACE, catalog, listener);
+          model.clearHistory();
+        } else if (op.kind() == Kind.LEGACY_CATALOG_CHANGE) {
+          boolean mirrored = mirrorDefault(op.id(), root, model);
+          userdb = new UserDB(root, NAMESPACE, catalog, listener);
+          model.clearHistory();
+          String mismatch = mirrored ? unbindDefault(op.id(), root, userdb) : null;
+          if (mismatch != null) {
+            return where + mismatch;
+          }
+        } else {
+          String mismatch = apply(op, userdb, model);
+          if (mismatch != null) {
+            return where + mismatch;
+          }
+        }
+      } catch (RuntimeException e) {
+        return where + "UserDB threw " + e;
+      }
+
+      String expected = model.snapshot();
+      String actual = KeymapSnapshot.of(userdb);
+      if (!expected.equals(actual)) {
+        return where
+            + "keymap differs from the model at "
+            + KeymapSnapshot.firstDifference(expected, actual);
+      }
+      if (!listenerErrors.isEmpty()) {
+        return where + listenerErrors.get(0);
+      }
+      String heard =
+          KeymapSnapshot.of(
+              userdb.getActiveProfile(), observed, userdb.canUndo(), userdb.canRedo());
+      if (!heard.equals(actual)) {
+        return where
+            + "listener calls do not add up to the keymap at "
+            + KeymapSnapshot.firstDifference(actual, heard);
+      }
+    }
+    return null;
+  }
+
+  // Writes the default of id into the default profile's node, as versions without profiles did
+  // for every action. Returns false, writing nothing, if that would not be a mirrored default.
+  private boolean mirrorDefault(String id, InMemoryPreferences root, Model model) {
+    Shortcut shortcut = defaults.get(id);
+    if (shortcut == null
+        || !Objects.equals(model.binding(UserDB.DEFAULT_PROFILE, id), shortcut)) {
+      return false;
+    }
+    root.node(NAMESPACE).put(id, shortcut.getInternalForm());
+    return true;
+  }
+
+  // A catalog that no longer binds id must unbind it, whatever was mirrored; the catalog is then
+  // restored so the model's defaults hold again.
+  private String unbindDefault(String id, InMemoryPreferences root, UserDB userdb) {
+    if (!UserDB.DEFAULT_PROFILE.equals(userdb.getActiveProfile())) {
+      // The mirror is dropped when the default profile is next loaded.
+      return null;
+    }
+    if (root.node(NAMESPACE).get(id, null) != null) {
+      return "the mirrored default of " + id + " was left in the store";
+    }
+    List<XAction> changed = new ArrayList<>(catalog);
+    changed.replaceAll(
+        xaction -> xaction.getId().equals(id) ? xaction.withShortcut(null) : xaction);
+    userdb.applyCatalogDiff(CatalogDiff.between(catalog, changed), changed);
+    Shortcut shortcut = userdb.retrieve(id);
+    userdb.applyCatalogDiff(CatalogDiff.between(changed, catalog), catalog);
+    return shortcut == null
+        ? null
+        : id + " stayed bound to " + shortcut + " after its default went";
+  }
+
+  // Applies one step to both sides and compares what the calls returned.
+  private String apply(Op op, UserDB userdb, Model model) {
+    switch (op.kind()) {
+      case STORE -> {
+        userdb.store(byId.get(op.id()).withShortcut(op.shortcut()));
+        model.store(op.id(), op.shortcut());
+      }
+      case STORE_ALL -> {
+        List<XAction> xactions = new ArrayList<>();
+        op.batch().forEach((id, shortcut) -> xactions.add(byId.get(id).withShortcut(shortcut)));
+        UserDB.ImportReport report = userdb.storeAll(xactions);
+        Map<String, Shortcut> next = new HashMap<>(model.bindings());
+        next.putAll(op.batch());
+        return compare(report, model.applyBatch(next));
+      }
+      case RESET -> {
+        userdb.persistDefaults(true);
+        model.reset();
+      }
+      case UNDO -> {
+        return compare("undo", userdb.undo(), model.undo());
+      }
+      case REDO -> {
+        return compare("redo", userdb.redo(), model.redo());
+      }
+      case SWITCH_PROFILE -> {
+        userdb.switchProfile(op.profile());
+        model.switchProfile(op.profile());
+      }
+      case DELETE_PROFILE -> {
+        boolean refused = false;
+        try {
+          userdb.deleteProfile(op.profile());
+        } catch (IllegalArgumentException e) {
+          refused = true;
+        }
+        return compare("refused", refused, !model.deleteProfile(op.profile()));
+      }
+      case ROUND_TRIP -> {
+        UserDB.ImportReport report;
+        try {
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          userdb.exportKeymap(out, op.format());
+          report =
+              userdb.importKeymap(
+                  new ByteArrayInputStream(out.toByteArray()), op.format(), true);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return compare(report, model.applyBatch(new HashMap<>(model.bindings())));
+      }
+      default -> throw new IllegalStateException(op.kind().name());
+    }
+    return null;
+  }
+
+  private static String compare(String what, boolean actual, boolean expected) {
+    return actual == expected ? null : what + " returned " + actual + ", expected " + expected;
+  }
+
+  // expectedChanged is -1 for a batch the model rejected.
+  private static String compare(UserDB.ImportReport report, int expectedChanged) {
+    String applied = compare("applied", report.applied(), expectedChanged >= 0);
+    if (applied != null || !report.applied() || report.changed() == expectedChanged) {
+      return applied;
+    }
+    return "reported " + report.changed() + " changed bindings, expected " + expectedChanged;
+  }
+
+  /** The reference: whole maps per profile, and whole-map copies for undo. */
+  private final class Model {
+    private record Edit(Map<String, Shortcut> before, Map<String, Shortcut> after) {}
+
+    private final Map<String, Map<String, Shortcut>> profiles = new HashMap<>();
+    private final List<Edit> history = new ArrayList<>();
+    private String profile = UserDB.DEFAULT_PROFILE;
+    // Edits in history that are currently applied; the rest can be redone.
+    private int done;
+
+    Map<String, Shortcut> bindings() {
+      return profiles.computeIfAbsent(profile, p -> new HashMap<>(defaults));
+    }
+
+    // Profiles never edited are at the defaults.
+    Shortcut binding(String name, String id) {
+      Map<String, Shortcut> bindings = profiles.get(name);
+      return bindings != null ? bindings.get(id) : defaults.get(id);
+    }
+
+    void store(String id, Shortcut shortcut) {
+      Map<String, Shortcut> before = new HashMap<>(bindings());
+      if (!Objects.equals(bindings().put(id, shortcut), shortcut)) {
+        record(before);
+      }
+    }
+
+    // Returns how many bindings changed, or -1 if next binds a shortcut twice.
+    int applyBatch(Map<String, Shortcut> next) {
+      Set<Shortcut> bound = new HashSet<>();
+      for (Shortcut shortcut : next.values()) {
+        if (shortcut != null && !bound.add(shortcut)) {
+          return -1;
+        }
+      }
+      Map<String, Shortcut> before = new HashMap<>(bindings());
+      int changed = 0;
+      for (String id : next.keySet()) {
+        if (!Objects.equals(before.get(id), next.get(id))) {
+          changed++;
+        }
+      }
+      bindings().putAll(next);
+      // Like UserDB, a batch that changes nothing leaves no undo step.
+      if (changed > 0) {
+        record(before);
+      }
+      return changed;
+    }
+
+    void reset() {
+      Map<String, Shortcut> before = new HashMap<>(bindings());
+      if (!before.equals(defaults)) {
+        bindings().putAll(defaults);
+        record(before);
+      }
+    }
+
+    private void record(Map<String, Shortcut> before) {
+      history.subList(done, history.size()).clear();
+      history.add(new Edit(before, new HashMap<>(bindings())));
+      if (history.size() > HISTORY_CAPACITY) {
+        history.remove(0);
+      }
+      done = history.size();
+    }
+
+    boolean undo() {
+      if (done == 0) {
+        return false;
+      }
+      done--;
+      bindings().putAll(history.get(done).before());
+      return true;
+    }
+
+    boolean redo() {
+      if (done == history.size()) {
+        return false;
+      }
+      bindings().putAll(history.get(done).after());
+      done++;
+      return true;
+    }
+
+    void switchProfile(String name) {
+      if (!name.equals(profile)) {
+        profile = name;
+        clearHistory();
+      }
+    }
+
+    // Returns false if the profile may not be deleted.
+    boolean deleteProfile(String name) {
+      if (name.equals(UserDB.DEFAULT_PROFILE) || name.equals(profile)) {
+        return false;
+      }
+      profiles.remove(name);
+      return true;
+    }
+
+    void clearHistory() {
+      history.clear();
+      done = 0;
+    }
+
+    String snapshot() {
+      return KeymapSnapshot.of(profile, bindings(), done > 0, done < history.size());
+    }
+  }
+}
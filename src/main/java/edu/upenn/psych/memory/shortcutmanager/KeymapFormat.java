@@ -0,0 +1,27 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/** File formats for {@link UserDB#exportKeymap} and {@link UserDB#importKeymap}. */
+public enum KeymapFormat {
+  /** One {@code {"id":..., "shortcut":...}} object per line; a null shortcut means unbound. */
+  JSON_LINES(new JsonFactoryBuilder().rootValueSeparator("\n").build()),
+  /** The same records encoded as Smile, Jackson's binary JSON, with shared key names. */
+  BINARY(new SmileFactory());
+
+  private final JsonFactory factory;
+
+  KeymapFormat(JsonFactory factory) {
+    this.factory = factory;
+  }
+
+  JsonFactory factory() {
+    return factory;
+  }
+
+  public static KeymapFormat forFileName(String fileName) {
+    return fileName.endsWith(".smile") || fileName.endsWith(".bin") ? BINARY : JSON_LINES;
+  }
+}
@@ -0,0 +1,52 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A canonical text rendering of everything a {@link UserDB} exposes about its keymap, so that
+ * two keymaps are the same exactly when their snapshots are equal strings.
+ *
+ * <p>The first line holds the active profile and whether undo and redo are possible. Then comes
+ * one {@code id<TAB>shortcut} line per action, sorted by id, with {@code #} for unbound.
+ */
+final class KeymapSnapshot {
+
+  private KeymapSnapshot() {}
+
+  static String of(UserDB userdb) {
+    return of(userdb.getActiveProfile(), userdb.retrieveAll(), userdb.canUndo(), userdb.canRedo());
+  }
+
+  static String of(
+      String profile, Map<String, Shortcut> bindings, boolean canUndo, boolean canRedo) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("profile ")
+        .append(profile)
+        .append(canUndo ? " undo" : "")
+        .append(canRedo ? " redo" : "")
+        .append('\n');
+    for (Map.Entry<String, Shortcut> entry : new TreeMap<>(bindings).entrySet()) {
+      Shortcut shortcut = entry.getValue();
+      sb.append(entry.getKey())
+          .append('\t')
+          .append(shortcut != null ? shortcut.getInternalForm().trim() : "#")
+          .append('\n');
+    }
+    return sb.toString();
+  }
+
+  /** The first line where two snapshots differ, as "expected" and "actual" lines. */
+  static String firstDifference(String expected, String actual) {
+    String[] want = expected.split("\n", -1);
+    String[] got = actual.split("\n", -1);
+    for (int i = 0; i < Math.max(want.length, got.length); i++) {
+      String w = i < want.length ? want[i] : "<end>";
+      String g = i < got.length ? got[i] : "<end>";
+      if (!w.equals(g)) {
+        return "line " + (i + 1) + "\n  expected: " + w + "\n  actual:   " + g;
+      }
+    }
+    return null;
+  }
+}
@@ -1,5 +1,9 @@
 package edu.upenn.psych.memory.shortcutmanager;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
 public class Main {
 
   public static void main(String[] args) {
@@ -7,11 +11,41 @@ public class Main {
     var resourcePath = "/actions.xml";
     var url = Main.class.getResource(resourcePath);
 
+    if (args.length > 0) {
+      System.exit(BatchMode.run(args, url, namespace));
+    }
+
     if (url != null) {
       XActionListener listener =
           (xaction, oldShortcut) ->
               System.out.println("heard " + xaction + " formerly " + oldShortcut);
-      new ShortcutManager(url, namespace, listener).setVisible(true);
+      var manager = new ShortcutManager(url, namespace, listener);
+      if (Boolean.getBoolean("shortcutmanager.watch")) {
+        try {
+          manager.watchCatalog();
+        } catch (IOException | IllegalArgumentException e) {
+          System.err.println("not watching " + url + ": " + e.getMessage());
+        }
+      }
+      if (Boolean.getBoolean("shortcutmanager.shared")) {
+        try {
+          manager.shareKeymap(Duration.ofMillis(500));
+        } catch (IOException e) {
+          System.err.println("not sharing shortcuts with other processes: " + e.getMessage());
+        }
+      }
+      String trace = System.getProperty("shortcutmanager.recordKeys");
+      if (trace != null) {
+        try {
+          manager.recordKeys(Path.of(trace));
+        } catch (IOException e) {
+          System.err.println("not recording key events to " + trace + ": " + e.getMessage());
+        }
+      }
+      if (Boolean.getBoolean("shortcutmanager.startupProfile")) {
+        manager.whenLoaded().thenRun(() -> System.err.print(manager.getStartupProfile()));
+      }
+      manager.setVisible(true);
     } else {
       System.err.println("no keyboard shortcuts file found");
     }
@@ -0,0 +1,230 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for the shortcut manager's operations.
+ *
+ * <p>Disabled by default; enable with {@code -Dshortcutmanager.metrics=true} or {@link
+ * #setEnabled}. While disabled, {@link #start()} returns without reading the clock and {@link
+ * #stop} and {@link #count} return immediately, so instrumented paths do not allocate.
+ */
+public final class Metrics {
+
+  public enum Op {
+    PARSE,
+    LOAD,
+    RETRIEVE,
+    STORE,
+    PERSIST_DEFAULTS,
+    CONFLICT_CHECK,
+    LISTENER_DISPATCH,
+    CACHE_HIT,
+    CACHE_MISS,
+    INTERN_HIT,
+    INTERN_MISS,
+    TABLE_PAINT;
+
+    public String metricName() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  private static final String JMX_DOMAIN = Metrics.class.getPackage().getName();
+  private static final Histogram[] HISTOGRAMS = new Histogram[Op.values().length];
+
+  static {
+    for (Op op : Op.values()) {
+      HISTOGRAMS[op.ordinal()] = new Histogram();
+    }
+  }
+
+  private static volatile boolean enabled = Boolean.getBoolean("shortcutmanager.metrics");
+  private static volatile MetricsSink[] sinks = new MetricsSink[0];
+  private static boolean registered;
+
+  static {
+    if (enabled) {
+      registerMBeans();
+    }
+  }
+
+  private Metrics() {}
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static void setEnabled(boolean enable) {
+    enabled = enable;
+    if (enable) {
+      registerMBeans();
+    }
+  }
+
+  /** Returns a start timestamp for {@link #stop}, or 0 when metrics are disabled. */
+  public static long start() {
+    return enabled ? System.nanoTime() : 0L;
+  }
+
+  public static void stop(Op op, long start) {
+    if (!enabled || start == 0L) {
+      return;
+    }
+    record(op, System.nanoTime() - start);
+  }
+
+  /** Records an occurrence of an untimed event such as a cache hit or a table paint. */
+  public static void count(Op op) {
+    if (!enabled) {
+      return;
+    }
+    record(op, 0L);
+  }
+
+  private static void record(Op op, long nanos) {
+    HISTOGRAMS[op.ordinal()].record(nanos);
+    for (MetricsSink sink : sinks) {
+      sink.record(op, nanos);
+    }
+  }
+
+  public static synchronized void addSink(MetricsSink sink) {
+    MetricsSink[] next = Arrays.copyOf(sinks, sinks.length + 1);
+    next[sinks.length] = sink;
+    sinks = next;
+  }
+
+  public static synchronized void removeSink(MetricsSink sink) {
+    sinks = Arrays.stream(sinks).filter(s -> s != sink).toArray(MetricsSink[]::new);
+  }
+
+  public static OperationMXBean get(Op op) {
+    return HISTOGRAMS[op.ordinal()];
+  }
+
+  public static void reset() {
+    for (Histogram histogram : HISTOGRAMS) {
+      histogram.reset();
+    }
+  }
+
+  public static synchronized void registerMBeans() {
+    if (registered) {
+      return;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      for (Op op : Op.values()) {
+        ObjectName name = new ObjectName(JMX_DOMAIN + ":type=Metrics,name=" + op.metricName());
+        if (!server.isRegistered(name)) {
+          server.registerMBean(HISTOGRAMS[op.ordinal()], name);
+        }
+      }
+      registered = true;
+    } catch (JMException e) {
+      System.err.println("could not register metrics MBeans: " + e);
+    }
+  }
+
+  /** JMX view of one operation's count and latency distribution. */
+  public interface OperationMXBean {
+    long getCount();
+
+    long getTotalNanos();
+
+    long getMaxNanos();
+
+    double getMeanNanos();
+
+    long getP50Nanos();
+
+    long getP99Nanos();
+
+    void reset();
+  }
+
+  /** Power-of-two bucketed latency histogram; buckets are preallocated so recording is free. */
+  private static final class Histogram implements OperationMXBean {
+    // Bucket i holds values whose bit length is i, so bucket 0 holds only zero.
+    private static final int BUCKETS = 64;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    void record(long nanos) {
+      count.increment();
+      totalNanos.add(nanos);
+      maxNanos.accumulateAndGet(nanos, Math::max);
+      buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+    }
+
+    @Override
+    public long getCount() {
+      return count.sum();
+    }
+
+    @Override
+    public long getTotalNanos() {
+      return totalNanos.sum();
+    }
+
+    @Override
+    public long getMaxNanos() {
+      return maxNanos.get();
+    }
+
+    @Override
+    public double getMeanNanos() {
+      long n = count.sum();
+      return n == 0 ? 0 : (double) totalNanos.sum() / n;
+    }
+
+    @Override
+    public long getP50Nanos() {
+      return percentile(0.50);
+    }
+
+    @Override
+    public long getP99Nanos() {
+      return percentile(0.99);
+    }
+
+    // Upper bound of the bucket containing the requested rank.
+    private long percentile(double p) {
+      long n = count.sum();
+      if (n == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(p * n);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += buckets.get(i);
+        if (seen >= rank) {
+          return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+        }
+      }
+      return maxNanos.get();
+    }
+
+    @Override
+    public void reset() {
+      count.reset();
+      totalNanos.reset();
+      maxNanos.set(0);
+      for (int i = 0; i < BUCKETS; i++) {
+        buckets.set(i, 0);
+      }
+    }
+  }
+}
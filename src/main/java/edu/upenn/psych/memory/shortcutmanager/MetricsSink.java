@@ -0,0 +1,12 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+/**
+ * Receives every metric recorded while {@link Metrics} is enabled. Called on the thread that
+ * performed the operation, so implementations should be cheap and must not block.
+ */
+public interface MetricsSink {
+  /**
+   * @param nanos elapsed time for timed operations, 0 for counted events
+   */
+  void record(Metrics.Op op, long nanos);
+}
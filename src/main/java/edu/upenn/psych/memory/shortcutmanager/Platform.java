@@ -0,0 +1,93 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An operating system as far as shortcuts are concerned: which catalog entries apply to it, which
+ * modifier the {@code menu} key stands for, and how shortcuts are displayed.
+ *
+ * <p>Everything that used to be derived from {@code os.name} on each use is fixed when the
+ * platform is created, so the catalog can be resolved and rendered for several platforms at once
+ * without touching system properties. Display strings are cached per platform.
+ */
+public final class Platform {
+  public static final Platform MAC_OS = new Platform("Mac OS X");
+  public static final Platform WINDOWS = new Platform("Windows");
+  public static final Platform LINUX = new Platform("Linux");
+
+  /** The platforms named in the actions file, in the order docs list them. */
+  public static final List<Platform> KNOWN = List.of(MAC_OS, WINDOWS, LINUX);
+
+  private static final Platform CURRENT = of(System.getProperty("os.name"));
+
+  private final String osName;
+  private final boolean mac;
+  private final String separator;
+  private final String menuKey;
+  private final Map<Shortcut, String> displayCache = new ConcurrentHashMap<>();
+
+  private Platform(String osName) {
+    this.osName = osName;
+    this.mac = osName.toLowerCase(Locale.ROOT).contains("mac");
+    this.separator = mac ? "" : "+";
+    this.menuKey = mac ? Shortcut.Key.INTERNAL_META : Shortcut.Key.INTERNAL_CTRL;
+  }
+
+  public static Platform current() {
+    return CURRENT;
+  }
+
+  /** Returns the known platform with this exact {@code os.name}, or a new one for any other. */
+  public static Platform of(String osName) {
+    for (Platform platform : KNOWN) {
+      if (platform.osName.equals(osName)) {
+        return platform;
+      }
+    }
+    return new Platform(osName);
+  }
+
+  public String osName() {
+    return osName;
+  }
+
+  public boolean isMac() {
+    return mac;
+  }
+
+  String separator() {
+    return separator;
+  }
+
+  // Internal form of the modifier that the actions file's "menu" key means here.
+  String menuKey() {
+    return menuKey;
+  }
+
+  /** True if an entry restricted to {@code oses} (empty meaning everywhere) applies here. */
+  public boolean accepts(List<String> oses) {
+    return oses.isEmpty() || oses.contains(osName);
+  }
+
+  public String display(Shortcut shortcut) {
+    return displayCache.computeIfAbsent(shortcut, s -> s.format(this));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof Platform other && osName.equals(other.osName);
+  }
+
+  @Override
+  public int hashCode() {
+    return osName.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return osName;
+  }
+}
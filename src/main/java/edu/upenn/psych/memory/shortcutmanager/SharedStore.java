@@ -0,0 +1,100 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cross-process coordination for one namespace: an exclusive file lock around every write to the
+ * keymap, and a version stamp in the same file that writers increment and readers poll.
+ *
+ * <p>The stamp is read through a memory mapping, so polling it is a single memory read with no
+ * system call. {@link FileLock}s are held per JVM, so threads in one JVM also serialize on a
+ * monitor shared by every store over the same file.
+ */
+final class SharedStore implements Closeable {
+  private static final int STAMP_BYTES = Long.BYTES;
+  private static final Map<Path, Object> MONITORS = new ConcurrentHashMap<>();
+
+  private final FileChannel channel;
+  private final MappedByteBuffer stamp;
+  private final Object monitor;
+  private long seen;
+
+  private SharedStore(Path file, FileChannel channel, MappedByteBuffer stamp) {
+    this.channel = channel;
+    this.stamp = stamp;
+    this.monitor = MONITORS.computeIfAbsent(file, f -> new Object());
+    this.seen = stamp.getLong(0);
+  }
+
+  /** The lock file for a namespace, under {@code ~/.shortcutmanager}. */
+  static Path fileFor(String namespace) {
+    String name = namespace.substring(1).replace('/', '.');
+    return Path.of(System.getProperty("user.home"), ".shortcutmanager", name + ".lock");
+  }
+
+  @SuppressWarnings("try") // The lock is held for the block's extent, never referenced
+  static SharedStore open(Path file) throws IOException {
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    FileChannel channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      if (channel.size() < STAMP_BYTES) {
+        try (FileLock lock = channel.lock()) {
+          if (channel.size() < STAMP_BYTES) {
+            channel.write(ByteBuffer.allocate(STAMP_BYTES), 0);
+          }
+        }
+      }
+      MappedByteBuffer stamp = channel.map(FileChannel.MapMode.READ_WRITE, 0, STAMP_BYTES);
+      return new SharedStore(file.toAbsolutePath(), channel, stamp);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** Runs {@code change} holding the lock in this JVM and across processes. */
+  @SuppressWarnings("try") // The lock is held for the block's extent, never referenced
+  <T> T locked(Supplier<T> change) {
+    synchronized (monitor) {
+      try (FileLock lock = channel.lock()) {
+        return change.get();
+      } catch (IOException e) {
+        throw new IllegalStateException("could not lock shared keymap", e);
+      }
+    }
+  }
+
+  /** Records that this process changed the store; call while {@link #locked}. */
+  synchronized void bump() {
+    seen = stamp.getLong(0) + 1;
+    stamp.putLong(0, seen);
+  }
+
+  /** True, once, for each time another process bumped the stamp since the last check. */
+  synchronized boolean changedElsewhere() {
+    long current = stamp.getLong(0);
+    if (current == seen) {
+      return false;
+    }
+    seen = current;
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
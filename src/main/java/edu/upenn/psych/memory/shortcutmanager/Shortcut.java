@@ -1,19 +1,17 @@
 package edu.upenn.psych.memory.shortcutmanager;
 
+import java.awt.event.KeyEvent;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Objects;
 import javax.swing.KeyStroke;
 
 public class Shortcut {
   public final KeyStroke stroke;
   private final String internalForm;
 
-  private static final boolean IS_MAC =
-      System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("mac");
   private static final String INTERNAL_FORM_DELIMITER = " ";
 
   // PC key names
@@ -28,8 +26,6 @@ public class Shortcut {
   private static final String MAC_SHIFT = "⇧";
   private static final String MAC_COMMAND = "⌘";
 
-  private static final String SYS_SEP = IS_MAC ? "" : "+";
-
   private static final Map<String, KeyMapping> MAC_MAP = createMacMap();
   private static final List<String> MAC_ORDER =
       List.of(MAC_CTRL, MAC_OPTION, MAC_SHIFT, MAC_COMMAND);
@@ -59,6 +55,88 @@ public class Shortcut {
     return map;
   }
 
+  /**
+   * Outcome of {@link #of} or {@link #parse}: a shortcut, or the reason there is none. Recent valid
+   * results are interned along with their shortcuts, so repeated lookups allocate nothing.
+   */
+  public record Result(Shortcut shortcut, String error) {
+
+    public boolean isValid() {
+      return shortcut != null;
+    }
+
+    private static Result invalid(String error) {
+      return new Result(null, error);
+    }
+  }
+
+  // Valid results by packed stroke, by raw key event and by internal form.
+  private static final InternTable BY_STROKE = new InternTable();
+  private static final InternTable BY_KEY_EVENT = new InternTable();
+  private static final InternTable BY_FORM = new InternTable();
+
+  /**
+   * A fixed-size cache of valid results. A key lives in one of two neighbouring slots; when both
+   * hold other keys the new result takes the first, so the table never grows and stays current
+   * however many strokes pass through it. Slots are immutable, so a racing reader sees a whole
+   * entry or the one it replaced, and a lookup allocates nothing.
+   */
+  private static final class InternTable {
+    private static final int BITS = 12;
+
+    // form is null for long keys.
+    private record Slot(long key, String form, Result result) {}
+
+    private final Slot[] slots = new Slot[1 << BITS];
+
+    Result get(long key) {
+      int i = index(Long.hashCode(key));
+      Slot slot = slots[i];
+      if (slot != null && slot.form == null && slot.key == key) {
+        return slot.result;
+      }
+      slot = slots[i ^ 1];
+      return slot != null && slot.form == null && slot.key == key ? slot.result : null;
+    }
+
+    Result get(String form) {
+      int i = index(form.hashCode());
+      Slot slot = slots[i];
+      if (slot != null && form.equals(slot.form)) {
+        return slot.result;
+      }
+      slot = slots[i ^ 1];
+      return slot != null && form.equals(slot.form) ? slot.result : null;
+    }
+
+    Result put(long key, Result result) {
+      return put(Long.hashCode(key), new Slot(key, null, result));
+    }
+
+    Result put(String form, Result result) {
+      return put(form.hashCode(), new Slot(0L, form, result));
+    }
+
+    private Result put(int hash, Slot slot) {
+      if (slot.result.isValid()) {
+        int i = index(hash);
+        slots[slots[i] != null && slots[i ^ 1] == null ? i ^ 1 : i] = slot;
+      }
+      return slot.result;
+    }
+
+    // Fibonacci hashing; the top bits spread nearby keys, such as one key code's modifiers.
+    private static int index(int hash) {
+      return (hash * 0x9E3779B9) >>> (Integer.SIZE - BITS);
+    }
+  }
+
+  private Shortcut(KeyStroke stroke, String internalForm) {
+    this.stroke = stroke;
+    this.internalForm = internalForm;
+  }
+
+  /** Prefer {@link #of(KeyStroke)}, which validates without throwing and shares instances. */
   public Shortcut(KeyStroke stroke) {
     this.stroke = stroke;
     String internal = UnsafeKeyUtils.getInternalFormOrNull(stroke);
@@ -75,8 +153,104 @@ public class Shortcut {
     return internalForm;
   }
 
-  private boolean sortKeys(String a, String b) {
-    List<String> order = IS_MAC ? MAC_ORDER : PC_ORDER;
+  /**
+   * The shortcut for pressing {@code keyCode} with {@code modifiers}, as reported by {@link
+   * KeyEvent#getKeyCode} and {@link KeyEvent#getModifiersEx}.
+   */
+  public static Result of(int keyCode, int modifiers) {
+    // Keyed on the raw values so that hits skip KeyStroke's own synchronized cache.
+    long key = ((long) modifiers << 32) | (keyCode & 0xFFFFFFFFL);
+    Result result = BY_KEY_EVENT.get(key);
+    if (result != null) {
+      Metrics.count(Metrics.Op.INTERN_HIT);
+      return result;
+    }
+    return BY_KEY_EVENT.put(key, of(KeyStroke.getKeyStroke(keyCode, modifiers)));
+  }
+
+  /**
+   * The shortcut for {@code stroke}. A stroke is valid if its internal form parses back to the
+   * same stroke, so that it can be stored and reloaded. Equal strokes looked up recently yield the
+   * same instance.
+   */
+  public static Result of(KeyStroke stroke) {
+    if (stroke == null) {
+      return Result.invalid("no key stroke");
+    }
+    long packed = packStroke(stroke);
+    Result result = BY_STROKE.get(packed);
+    if (result != null) {
+      Metrics.count(Metrics.Op.INTERN_HIT);
+      return result;
+    }
+    Metrics.count(Metrics.Op.INTERN_MISS);
+    String internal = UnsafeKeyUtils.getInternalFormOrNull(stroke);
+    if (internal == null || !stroke.equals(KeyStroke.getKeyStroke(internal))) {
+      result = Result.invalid("key stroke has no internal form: " + stroke);
+    } else {
+      result = new Result(new Shortcut(stroke, internal), null);
+    }
+    return BY_STROKE.put(packed, result);
+  }
+
+  /** The shortcut written in {@code internalForm}, as stored by {@link #getInternalForm}. */
+  public static Result parse(String internalForm) {
+    if (internalForm == null) {
+      return Result.invalid("no internal form");
+    }
+    Result result = BY_FORM.get(internalForm);
+    if (result != null) {
+      Metrics.count(Metrics.Op.INTERN_HIT);
+      return result;
+    }
+    KeyStroke stroke = KeyStroke.getKeyStroke(internalForm);
+    result =
+        stroke != null
+            ? of(stroke)
+            : Result.invalid("KeyStroke.getKeyStroke could not parse: " + internalForm);
+    return BY_FORM.put(internalForm, result);
+  }
+
+  // Packed layout: bits 0-31 key code (or key char for typed strokes), bits 32-55 modifiers,
+  // bits 56-57 event type. Zero is reserved for "no shortcut".
+  private static final int PACKED_PRESSED = 1;
+  private static final int PACKED_RELEASED = 2;
+  private static final int PACKED_TYPED = 3;
+
+  /** Packs a shortcut into a long for compact storage; {@code null} packs to 0. */
+  static long pack(Shortcut shortcut) {
+    return shortcut == null ? 0L : packStroke(shortcut.stroke);
+  }
+
+  private static long packStroke(KeyStroke s) {
+    int type;
+    int key;
+    if (s.getKeyEventType() == KeyEvent.KEY_TYPED) {
+      type = PACKED_TYPED;
+      key = s.getKeyChar();
+    } else {
+      type = s.isOnKeyRelease() ? PACKED_RELEASED : PACKED_PRESSED;
+      key = s.getKeyCode();
+    }
+    return ((long) type << 56) | ((long) (s.getModifiers() & 0xFFFFFF) << 32) | (key & 0xFFFFFFFFL);
+  }
+
+  /** Inverse of {@link #pack}. */
+  static Shortcut unpack(long packed) {
+    if (packed == 0L) {
+      return null;
+    }
+    int type = (int) (packed >>> 56);
+    int modifiers = (int) (packed >>> 32) & 0xFFFFFF;
+    int key = (int) packed;
+    KeyStroke stroke =
+        type == PACKED_TYPED
+            ? KeyStroke.getKeyStroke(Character.valueOf((char) key), modifiers)
+            : KeyStroke.getKeyStroke(key, modifiers, type == PACKED_RELEASED);
+    return of(stroke).shortcut();
+  }
+
+  private static boolean sortKeys(List<String> order, String a, String b) {
     int indexA = order.indexOf(a);
     int indexB = order.indexOf(b);
 
@@ -94,13 +268,18 @@ public class Shortcut {
 
   @Override
   public String toString() {
+    return Platform.current().display(this);
+  }
+
+  // Display form on the given platform; callers go through Platform.display, which caches it.
+  String format(Platform platform) {
     List<String> parts = separateInternalForm(internalForm);
     List<String> newParts = new ArrayList<>();
 
     for (String s : parts) {
       KeyMapping mapping = MAC_MAP.get(s);
       if (mapping != null) {
-        newParts.add(IS_MAC ? mapping.mac : mapping.pc);
+        newParts.add(platform.isMac() ? mapping.mac : mapping.pc);
       } else {
         newParts.add(s);
       }
@@ -108,6 +287,14 @@ public class Shortcut {
 
     newParts.removeAll(List.of("typed", "pressed", "released"));
 
+    // The key itself, as labelled on the user's keyboard.
+    if (stroke.getKeyEventType() != KeyEvent.KEY_TYPED && !newParts.isEmpty()) {
+      String label = KeyboardLayout.current().label(stroke.getKeyCode());
+      if (label != null) {
+        newParts.set(newParts.size() - 1, label);
+      }
+    }
+
     // Capitalize first letter of each part
     for (int i = 0; i < newParts.size(); i++) {
       String part = newParts.get(i).toLowerCase(Locale.ROOT);
@@ -117,36 +304,45 @@ public class Shortcut {
     }
 
     // Sort keys
-    newParts.sort((a, b) -> sortKeys(a, b) ? -1 : 1);
+    List<String> order = platform.isMac() ? MAC_ORDER : PC_ORDER;
+    newParts.sort((a, b) -> sortKeys(order, a, b) ? -1 : 1);
 
-    return String.join(SYS_SEP, newParts);
+    return String.join(platform.separator(), newParts);
   }
 
   public static List<String> separateInternalForm(String internalForm) {
     return List.of(internalForm.split(INTERNAL_FORM_DELIMITER));
   }
 
+  /** Like {@link #parse}, returning {@code null} for an invalid form. */
   public static Shortcut fromInternalForm(String internalForm) {
-    KeyStroke stroke = KeyStroke.getKeyStroke(internalForm);
-    if (stroke != null) {
-      return new Shortcut(stroke);
-    } else {
-      System.err.println(
-          "KeyStroke.getKeyStroke could not parse allegedly internal form: " + internalForm);
-      return null;
-    }
+    return parse(internalForm).shortcut();
   }
 
   public static Shortcut fromExternalForm(
       List<String> maskKeyExternalForms, List<String> nonMaskKeyExternalForms) {
+    return fromExternalForm(maskKeyExternalForms, nonMaskKeyExternalForms, Platform.current());
+  }
+
+  public static Shortcut fromExternalForm(
+      List<String> maskKeyExternalForms,
+      List<String> nonMaskKeyExternalForms,
+      Platform platform) {
+    return parseExternalForm(maskKeyExternalForms, nonMaskKeyExternalForms, platform).shortcut();
+  }
+
+  public static Result parseExternalForm(
+      List<String> maskKeyExternalForms,
+      List<String> nonMaskKeyExternalForms,
+      Platform platform) {
     List<String> maskKeyInternalForms = new ArrayList<>();
     for (String form : maskKeyExternalForms) {
-      maskKeyInternalForms.add(Key.external2InternalForm(form));
+      maskKeyInternalForms.add(Key.external2InternalForm(form, platform));
     }
 
     List<String> nonMaskKeyInternalForms = new ArrayList<>();
     for (String form : nonMaskKeyExternalForms) {
-      nonMaskKeyInternalForms.add(Key.external2InternalForm(form));
+      nonMaskKeyInternalForms.add(Key.external2InternalForm(form, platform));
     }
 
     String internalShortcutForm =
@@ -154,7 +350,7 @@ public class Shortcut {
             + INTERNAL_FORM_DELIMITER
             + String.join(INTERNAL_FORM_DELIMITER, nonMaskKeyInternalForms);
 
-    return fromInternalForm(internalShortcutForm);
+    return parse(internalShortcutForm);
   }
 
   @Override
@@ -165,12 +361,12 @@ public class Shortcut {
     if (!(o instanceof Shortcut shortcut)) {
       return false;
     }
-    return Objects.equals(stroke, shortcut.stroke);
+    return stroke.equals(shortcut.stroke);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(stroke);
+    return stroke.hashCode();
   }
 
   public static class Key {
@@ -184,8 +380,12 @@ public class Shortcut {
     public static final String INTERNAL_SHIFT = "shift";
 
     public static String external2InternalForm(String str) {
+      return external2InternalForm(str, Platform.current());
+    }
+
+    public static String external2InternalForm(String str, Platform platform) {
       return switch (str) {
-        case EXTERNAL_MENU -> IS_MAC ? INTERNAL_META : INTERNAL_CTRL;
+        case EXTERNAL_MENU -> platform.menuKey();
         case EXTERNAL_COMMAND -> INTERNAL_META;
         default -> str;
       };
@@ -1,100 +1,473 @@
 package edu.upenn.psych.memory.shortcutmanager;
 
-import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
-import java.awt.event.InputEvent;
-import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
 import javax.swing.AbstractAction;
-import javax.swing.BorderFactory;
+import javax.swing.Action;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
-import javax.swing.JTable;
+import javax.swing.JTree;
 import javax.swing.KeyStroke;
-import javax.swing.ListSelectionModel;
 import javax.swing.ScrollPaneConstants;
-import javax.swing.UIManager;
+import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
-import javax.swing.border.CompoundBorder;
-import javax.swing.event.TableModelListener;
-import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.TableModel;
+import javax.swing.tree.DefaultTreeCellRenderer;
+import javax.swing.tree.TreePath;
 
 public class ShortcutManager extends JFrame {
-  private final List<XAction> defaultXActions;
+  private final URL url;
+  private final String namespace;
+  private Catalog defaultXActions;
   private final UserDB userdb;
 
   @SuppressWarnings("UnusedVariable") // Used in nested ShortcutTable class
   private final XActionListener listener;
 
+  private final ShortcutTable shortcutTable;
   private final ContentPane contentPane;
-
+  private UsageTracker usageTracker;
+  private final StartupProfile startupProfile = new StartupProfile();
+
+  // Rows in the first batch handed to the table, about a screenful. Each later batch is twice
+  // the size of the one before, so the catalog is rebuilt a logarithmic number of times.
+  private static final int FIRST_BATCH = 64;
+
+  // Set until the loader's last batch is in the table, or a catalog reload superseded it.
+  private boolean loading = true;
+  private final CompletableFuture<Catalog> loaded = new CompletableFuture<>();
+
+  /**
+   * Opens with an empty table and reads the actions file on a background thread. The listener
+   * hears about every action as its row is added, and {@link #whenLoaded} completes once the
+   * whole catalog is in the table.
+   */
   public ShortcutManager(URL url, String namespace, XActionListener listener) {
-    this.defaultXActions = new XActionParser(url).getXactions();
+    long start = Metrics.start();
+    this.url = url;
+    this.namespace = namespace;
+    this.defaultXActions = Catalog.of(List.of());
+
+    StartupProfile.Timer phase = startupProfile.start(StartupProfile.Phase.LOAD_KEYMAP);
     this.userdb = new UserDB(namespace, defaultXActions, listener);
+    phase.stop(userdb.loadCalls());
     this.listener = listener;
 
-    userdb.persistDefaults(false);
+    this.shortcutTable = new ShortcutTable(defaultXActions, userdb, listener, startupProfile);
 
+    phase = startupProfile.start(StartupProfile.Phase.BUILD_LAYOUT);
     this.contentPane = new ContentPane();
     setSize(new Dimension(800, contentPane.getPreferredSize().height));
     setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
     addWindowListener(new EscapeWindowListener());
     setTitle("Keyboard Shortcuts Manager");
     setContentPane(contentPane);
+    phase.stop(contentPane.getComponentCount());
+
+    Thread loader = new Thread(new CatalogLoader(start), "shortcut-catalog-loader");
+    loader.setDaemon(true);
+    loader.start();
+  }
+
+  /**
+   * Completes on the EDT with the catalog once every action is in the table, or exceptionally if
+   * the actions file could not be read.
+   */
+  public CompletionStage<Catalog> whenLoaded() {
+    return loaded.minimalCompletionStage();
+  }
 
-    Map<String, Shortcut> curShortMap = userdb.retrieveAll();
-    for (String id : curShortMap.keySet()) {
-      XAction defaultXAction = findXActionById(id);
-      if (defaultXAction != null) {
-        Shortcut shortOpt = curShortMap.get(id);
-        XAction newXAction = defaultXAction.withShortcut(userdb.retrieve(id));
-        listener.xActionUpdated(newXAction, shortOpt);
+  /**
+   * Parses the catalog off the EDT and hands it over in batches that double in size, each with the
+   * catalog read so far, which is also built here rather than on the EDT.
+   */
+  private final class CatalogLoader implements Runnable, Consumer<XAction> {
+    private final long start;
+    private final List<XAction> read = new ArrayList<>();
+    private int batchSize = FIRST_BATCH;
+    private List<XAction> batch = new ArrayList<>(batchSize);
+
+    CatalogLoader(long start) {
+      this.start = start;
+    }
+
+    @Override
+    public void run() {
+      StartupProfile.Timer phase = startupProfile.start(StartupProfile.Phase.PARSE);
+      try {
+        Catalog catalog = new XActionParser(url).getXactions(Platform.current(), this);
+        flush();
+        phase.stop(catalog.size());
+        SwingUtilities.invokeLater(() -> finishLoading(start));
+      } catch (RuntimeException e) {
+        phase.stop(0);
+        SwingUtilities.invokeLater(() -> failLoading(e));
+      }
+    }
+
+    @Override
+    public void accept(XAction xaction) {
+      batch.add(xaction);
+      if (batch.size() == batchSize) {
+        flush();
       }
     }
-  }
 
-  private XAction findXActionById(String id) {
-    for (XAction xAction : defaultXActions) {
-      if (xAction.getId().equals(id)) {
-        return xAction;
+    private void flush() {
+      if (!batch.isEmpty()) {
+        List<XAction> rows = batch;
+        read.addAll(rows);
+        Catalog catalog = Catalog.of(read);
+        SwingUtilities.invokeLater(() -> appendActions(rows, catalog));
+        batchSize *= 2;
+        batch = new ArrayList<>(batchSize);
       }
     }
-    return null;
+  }
+
+  // Adds rows the loader has read, the same way a reload adds actions to the end of the file.
+  private void appendActions(List<XAction> rows, Catalog catalog) {
+    if (!loading) {
+      return;
+    }
+    boolean first = defaultXActions.isEmpty();
+    CatalogDiff diff = new CatalogDiff(rows, List.of(), List.of());
+    StartupProfile.Timer phase = startupProfile.start(StartupProfile.Phase.NOTIFY);
+    defaultXActions = catalog;
+    phase.stop(userdb.applyCatalogDiff(diff, defaultXActions));
+    phase = startupProfile.start(StartupProfile.Phase.POPULATE);
+    showCatalog(diff);
+    if (first) {
+      shortcutTable.sizeColumns();
+      startupProfile.firstRowsShown();
+    }
+    contentPane.showProgress(defaultXActions.size());
+    phase.stop(rows.size());
+  }
+
+  private void finishLoading(long start) {
+    if (loading) {
+      loading = false;
+      StartupProfile.Timer phase = startupProfile.start(StartupProfile.Phase.SIZE_COLUMNS);
+      phase.stop(shortcutTable.sizeColumns());
+      contentPane.hideProgress();
+      contentPane.regroup();
+    }
+    Metrics.stop(Metrics.Op.LOAD, start);
+    loaded.complete(defaultXActions);
+  }
+
+  private void failLoading(RuntimeException e) {
+    System.err.println("could not load " + url + ": " + e.getMessage());
+    if (loading) {
+      loading = false;
+      contentPane.showLoadError(e.getMessage());
+    }
+    loaded.completeExceptionally(e);
+  }
+
+  /** How long each phase of construction took; see {@link StartupProfile}. */
+  public StartupProfile getStartupProfile() {
+    return startupProfile;
+  }
+
+  /**
+   * Reloads the catalog whenever the actions file changes, applying only what changed to the
+   * user's keymap, the table and the listener. Only {@code file:} URLs can be watched.
+   *
+   * @return the watcher; close it to stop watching
+   */
+  public CatalogWatcher watchCatalog() throws IOException {
+    return CatalogWatcher.watch(
+        url, catalog -> SwingUtilities.invokeLater(() -> reloadCatalog(catalog)));
+  }
+
+  /**
+   * Appends every key event the shortcut table receives to {@code trace}, for later replay with
+   * {@link KeyTrace#replay}.
+   *
+   * @return the recorder; close it to stop recording
+   */
+  public Closeable recordKeys(Path trace) throws IOException {
+    return KeyTrace.Recorder.attach(shortcutTable, shortcutTable.keyboardLayout(), trace);
+  }
+
+  /**
+   * Keeps this manager's keymap consistent with other processes editing the same namespace, such
+   * as another instance or a batch command. Their edits are picked up every {@code pollInterval}
+   * and shown in the table.
+   *
+   * @return close it to stop sharing
+   */
+  public Closeable shareKeymap(Duration pollInterval) throws IOException {
+    return userdb.shareAcrossProcesses(
+        pollInterval,
+        r ->
+            SwingUtilities.invokeLater(
+                () -> {
+                  r.run();
+                  contentPane.repaint();
+                }));
+  }
+
+  /**
+   * Starts counting action invocations and adds a sortable "Uses" column to the table. The host's
+   * action dispatch should report each invocation to the returned tracker.
+   */
+  public UsageTracker trackUsage(Duration snapshotInterval) {
+    if (usageTracker == null) {
+      usageTracker = new UsageTracker(namespace, defaultXActions, snapshotInterval);
+      shortcutTable.showUsage(usageTracker);
+      contentPane.addUsageFilter();
+    }
+    return usageTracker;
+  }
+
+  void reloadCatalog(List<XAction> catalog) {
+    if (loading) {
+      // Newer than what the loader is still handing over.
+      loading = false;
+      contentPane.hideProgress();
+    }
+    Catalog next = Catalog.of(catalog);
+    CatalogDiff diff = CatalogDiff.between(defaultXActions, next);
+    if (!diff.isEmpty()) {
+      applyCatalog(diff, next);
+    }
+  }
+
+  private void applyCatalog(CatalogDiff diff, Catalog catalog) {
+    defaultXActions = catalog;
+    userdb.applyCatalogDiff(diff, defaultXActions);
+    showCatalog(diff);
+  }
+
+  // Brings the usage counts, the table and the tree up to date with defaultXActions.
+  private void showCatalog(CatalogDiff diff) {
+    if (usageTracker != null) {
+      usageTracker.applyCatalog(defaultXActions);
+    }
+    shortcutTable.getModel().applyCatalogDiff(diff, defaultXActions);
+    if (!loading) {
+      // While loading, the tree is rebuilt once the last batch is in.
+      contentPane.regroup();
+    }
   }
 
   private class ContentPane extends JPanel {
+    private static final String UNGROUPED = "None";
+
     private final Scroller scroller;
+    private final JProgressBar progress;
     private final ResetButtonPanel resetButtonPanel;
+    private final JComboBox<Object> groupBy;
+    private final JPanel groupByPanel;
+    private JTree groupTree;
 
     public ContentPane() {
       setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
       this.scroller = new Scroller();
+      this.progress = new JProgressBar();
+      progress.setIndeterminate(true);
+      progress.setStringPainted(true);
+      progress.setString("Loading shortcuts...");
       this.resetButtonPanel = new ResetButtonPanel();
-
+      this.groupBy =
+          new JComboBox<>(
+              new Object[] {
+                UNGROUPED, ActionTreeModel.Grouping.PACKAGE, ActionTreeModel.Grouping.CATEGORY
+              });
+      groupBy.setFocusable(false);
+      groupBy.addActionListener(e -> regroup());
+
+      this.groupByPanel = new JPanel();
+      groupByPanel.setLayout(new BoxLayout(groupByPanel, BoxLayout.X_AXIS));
+      groupByPanel.add(new JLabel("Group by: "));
+      groupByPanel.add(groupBy);
+      groupByPanel.add(Box.createHorizontalGlue());
+
+      add(groupByPanel);
       add(scroller);
+      add(progress);
       add(Box.createVerticalBox());
       add(resetButtonPanel);
     }
 
+    void showProgress(int rows) {
+      progress.setString(String.format("Loading shortcuts: %,d actions", rows));
+    }
+
+    void hideProgress() {
+      remove(progress);
+      revalidate();
+      repaint();
+    }
+
+    void showLoadError(String message) {
+      progress.setIndeterminate(false);
+      progress.setString("Could not load shortcuts: " + message);
+    }
+
+    void addUsageFilter() {
+      JCheckBox usedOnly = new JCheckBox("Used only");
+      usedOnly.setFocusable(false);
+      usedOnly.addActionListener(e -> shortcutTable.filterByUsage(usedOnly.isSelected() ? 1 : 0));
+      groupByPanel.add(usedOnly, groupByPanel.getComponentCount() - 1);
+      groupByPanel.revalidate();
+    }
+
+    /**
+     * Shows the flat table, or a freshly built tree for the selected grouping with the groups that
+     * were expanded before still expanded.
+     */
+    void regroup() {
+      if (!(groupBy.getSelectedItem() instanceof ActionTreeModel.Grouping grouping)) {
+        if (scroller.getViewport().getView() != shortcutTable) {
+          scroller.setViewportView(shortcutTable);
+        }
+        return;
+      }
+      ActionTreeModel model = new ActionTreeModel(defaultXActions, grouping);
+      if (groupTree == null) {
+        groupTree = new JTree(model);
+        groupTree.setShowsRootHandles(true);
+        groupTree.setCellRenderer(new ActionTreeCellRenderer());
+        groupTree.addMouseListener(
+            new MouseAdapter() {
+              @Override
+              public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                  TreePath path = groupTree.getPathForLocation(e.getX(), e.getY());
+                  if (path != null && path.getLastPathComponent() instanceof XAction xaction) {
+                    showInTable(xaction);
+                  }
+                }
+              }
+            });
+        groupTree
+            .getInputMap()
+            .put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "showInTable");
+        groupTree
+            .getActionMap()
+            .put(
+                "showInTable",
+                new AbstractAction() {
+                  @Override
+                  public void actionPerformed(ActionEvent e) {
+                    TreePath path = groupTree.getSelectionPath();
+                    if (path != null && path.getLastPathComponent() instanceof XAction xaction) {
+                      showInTable(xaction);
+                    }
+                  }
+                });
+      } else {
+        List<List<String>> expanded = expandedGroups();
+        groupTree.setModel(model);
+        expandGroups(model, expanded);
+      }
+      scroller.setViewportView(groupTree);
+    }
+
+    // The labels from the root down to each expanded group, which survive a rebuilt model.
+    private List<List<String>> expandedGroups() {
+      List<List<String>> expanded = new ArrayList<>();
+      Enumeration<TreePath> paths =
+          groupTree.getExpandedDescendants(new TreePath(groupTree.getModel().getRoot()));
+      while (paths != null && paths.hasMoreElements()) {
+        Object[] nodes = paths.nextElement().getPath();
+        List<String> labels = new ArrayList<>(nodes.length - 1);
+        for (int i = 1; i < nodes.length; i++) {
+          labels.add(((ActionTreeModel.Group) nodes[i]).label());
+        }
+        expanded.add(labels);
+      }
+      return expanded;
+    }
+
+    private void expandGroups(ActionTreeModel model, List<List<String>> expanded) {
+      for (List<String> labels : expanded) {
+        TreePath path = new TreePath(model.getRoot());
+        for (String label : labels) {
+          Object parent = path.getLastPathComponent();
+          Object match = null;
+          for (int i = 0; i < model.getChildCount(parent) && match == null; i++) {
+            Object child = model.getChild(parent, i);
+            if (child instanceof ActionTreeModel.Group group && group.label().equals(label)) {
+              match = child;
+            }
+          }
+          if (match == null) {
+            break;
+          }
+          path = path.pathByAddingChild(match);
+        }
+        groupTree.expandPath(path);
+      }
+    }
+
+    // Leaves the tree for the table, with the chosen action selected and scrolled into view.
+    private void showInTable(XAction xaction) {
+      groupBy.setSelectedItem(UNGROUPED);
+      int row = defaultXActions.indexOfId(xaction.getId());
+      if (row >= 0) {
+        row = shortcutTable.convertRowIndexToView(row);
+      }
+      if (row >= 0) {
+        shortcutTable.setRowSelectionInterval(row, row);
+        shortcutTable.scrollRectToVisible(shortcutTable.getCellRect(row, 0, true));
+      }
+      shortcutTable.requestFocusInWindow();
+    }
+
+    private final class ActionTreeCellRenderer extends DefaultTreeCellRenderer {
+      @Override
+      public Component getTreeCellRendererComponent(
+          JTree tree,
+          Object value,
+          boolean selected,
+          boolean expanded,
+          boolean leaf,
+          int row,
+          boolean hasFocus) {
+        Object text = value;
+        if (value instanceof XAction xaction) {
+          Shortcut shortcut = userdb.retrieve(xaction.getId());
+          text = shortcut != null ? xaction.name() + "    " + shortcut : xaction.name();
+        }
+        return super.getTreeCellRendererComponent(
+            tree, text, selected, expanded, leaf, row, hasFocus);
+      }
+    }
+
     private class Scroller extends JScrollPane {
       public Scroller() {
-        setViewportView(
-            new ShortcutTable(defaultXActions.toArray(new XAction[0]), userdb, listener));
+        setViewportView(shortcutTable);
 
         setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
         setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
@@ -119,6 +492,9 @@ public class ShortcutManager extends JFrame {
     }
 
     private class ResetButtonPanel extends JPanel {
+      private final Action undo;
+      private final Action redo;
+
       public ResetButtonPanel() {
         JButton button =
             new JButton(
@@ -134,12 +510,40 @@ public class ShortcutManager extends JFrame {
                     }
                   }
                 });
+        undo =
+            new AbstractAction("Undo") {
+              @Override
+              public void actionPerformed(ActionEvent e) {
+                if (userdb.undo()) {
+                  ContentPane.this.repaint();
+                }
+              }
+            };
+        redo =
+            new AbstractAction("Redo") {
+              @Override
+              public void actionPerformed(ActionEvent e) {
+                if (userdb.redo()) {
+                  ContentPane.this.repaint();
+                }
+              }
+            };
+        updateUndoRedo();
+        // Edits can come from batch commands and other processes as well as from this window.
+        userdb.onHistoryChange(() -> SwingUtilities.invokeLater(this::updateUndoRedo));
 
         setLayout(new BoxLayout(this, BoxLayout.X_AXIS));
         add(Box.createHorizontalGlue());
+        add(new JButton(undo));
+        add(new JButton(redo));
         add(button);
         add(Box.createHorizontalGlue());
       }
+
+      private void updateUndoRedo() {
+        undo.setEnabled(userdb.canUndo());
+        redo.setEnabled(userdb.canRedo());
+      }
     }
   }
 
@@ -150,212 +554,3 @@ public class ShortcutManager extends JFrame {
     }
   }
 }
-
-class ShortcutTable extends JTable {
-  private final XAction[] defaultXActions;
-  private final UserDB userdb;
-
-  @SuppressWarnings("UnusedVariable") // Listener is passed to UserDB for notifications
-  private final XActionListener listener;
-
-  private final int leftRightPad = 10;
-  private final ShortcutTableModel shortcutTableModel;
-
-  public ShortcutTable(XAction[] defaultXActions, UserDB userdb, XActionListener listener) {
-    this.defaultXActions = defaultXActions;
-    this.userdb = userdb;
-    this.listener = listener;
-    this.shortcutTableModel = new ShortcutTableModel();
-
-    setModel(shortcutTableModel);
-    setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-    setFillsViewportHeight(true);
-    addKeyListener(new ShortcutKeyAdapter());
-
-    // Set column widths
-    for (int c = 0; c < getColumnCount(); c++) {
-      int maxWidth = 0;
-      for (int r = 0; r < getRowCount(); r++) {
-        Object value = getValueAt(r, c);
-        Component comp =
-            getCellRenderer(r, c).getTableCellRendererComponent(this, value, false, false, r, c);
-        maxWidth = Math.max(maxWidth, comp.getPreferredSize().width);
-      }
-      getColumnModel().getColumn(c).setMinWidth(maxWidth + 4 + 2 * leftRightPad);
-    }
-
-    getTableHeader().setReorderingAllowed(false);
-    getTableHeader().setResizingAllowed(true);
-  }
-
-  @Override
-  public ShortcutCellRenderer getCellRenderer(int row, int column) {
-    return new ShortcutCellRenderer();
-  }
-
-  @Override
-  public ShortcutCellRenderer getDefaultRenderer(Class<?> columnClass) {
-    return new ShortcutCellRenderer();
-  }
-
-  @Override
-  public ShortcutTableModel getModel() {
-    return shortcutTableModel;
-  }
-
-  private final class ShortcutKeyAdapter extends KeyAdapter {
-    private final Set<Integer> standaloneKeyCodes = Set.of(KeyEvent.VK_RIGHT, KeyEvent.VK_LEFT);
-    private final Set<Integer> maskKeyCodes =
-        Set.of(KeyEvent.VK_CONTROL, KeyEvent.VK_SHIFT, KeyEvent.VK_ALT, KeyEvent.VK_META);
-
-    @Override
-    public void keyPressed(KeyEvent e) {
-      int modifiers = e.getModifiersEx();
-      int code = e.getKeyCode();
-      int selectedRow = getSelectedRow();
-
-      if (selectedRow >= 0) {
-        if ((code == KeyEvent.VK_BACK_SPACE || code == KeyEvent.VK_DELETE) && modifiers == 0) {
-          XAction rowXAction = shortcutTableModel.xactionForRow(selectedRow);
-          XAction newXAction = rowXAction.withShortcut(null);
-          doSwap(newXAction);
-        } else if (!maskKeyCodes.contains(code)) {
-          var enteredShortcut = new Shortcut(KeyStroke.getKeyStroke(code, modifiers));
-          var rowXAction = shortcutTableModel.xactionForRow(selectedRow);
-          var newXAction = rowXAction.withShortcut(enteredShortcut);
-
-          if (modifiers == InputEvent.SHIFT_DOWN_MASK || modifiers == 0) {
-            if (standaloneKeyCodes.contains(code)) {
-              doSwap(newXAction);
-            }
-          } else {
-            doSwap(newXAction);
-          }
-        }
-      }
-    }
-
-    private void doSwap(XAction toSwapIn) {
-      Shortcut shortcut = toSwapIn.shortcut();
-
-      // Check for duplicate shortcuts
-      if (shortcut != null) {
-        Map<String, Shortcut> allShortcuts = userdb.retrieveAll();
-        for (Shortcut existingShortcut : allShortcuts.values()) {
-          if (shortcut.equals(existingShortcut)) {
-            String msg = shortcut + " is already taken.";
-            JOptionPane.showMessageDialog(ShortcutTable.this, msg, "Error", JOptionPane.OK_OPTION);
-            return;
-          }
-        }
-      }
-
-      userdb.store(toSwapIn);
-      repaint();
-    }
-  }
-
-  private final class ShortcutTableModel implements TableModel {
-    private final List<String> headers = List.of("Action", "Shortcut", "Default");
-    private final String noShortcutRepr = "";
-
-    public XAction xactionForRow(int row) {
-      return defaultXActions[row];
-    }
-
-    @Override
-    public int getRowCount() {
-      return defaultXActions.length;
-    }
-
-    @Override
-    public int getColumnCount() {
-      return headers.size();
-    }
-
-    @Override
-    public String getColumnName(int columnIndex) {
-      return headers.get(columnIndex);
-    }
-
-    @Override
-    public Class<?> getColumnClass(int columnIndex) {
-      return String.class;
-    }
-
-    @Override
-    public boolean isCellEditable(int rowIndex, int columnIndex) {
-      return false;
-    }
-
-    @Override
-    public Object getValueAt(int rowIndex, int columnIndex) {
-      if (rowIndex >= defaultXActions.length
-          || columnIndex >= headers.size()
-          || rowIndex < 0
-          || columnIndex < 0) {
-        return null;
-      }
-
-      XAction defXAction = defaultXActions[rowIndex];
-      String key = defXAction.getId();
-      Map<String, Shortcut> map = userdb.retrieveAll();
-      Shortcut currentShortcut = map.get(key);
-
-      return switch (columnIndex) {
-        case 0 -> defXAction.name();
-        case 1 -> currentShortcut != null ? currentShortcut.toString() : noShortcutRepr;
-        case 2 -> defXAction.shortcut() != null ? defXAction.shortcut().toString() : noShortcutRepr;
-        default -> null;
-      };
-    }
-
-    @Override
-    public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
-      // Not editable
-    }
-
-    @Override
-    public void addTableModelListener(TableModelListener l) {
-      // Not implemented for this simple model
-    }
-
-    @Override
-    public void removeTableModelListener(TableModelListener l) {
-      // Not implemented for this simple model
-    }
-  }
-
-  private final class ShortcutCellRenderer extends DefaultTableCellRenderer {
-    @Override
-    public Component getTableCellRendererComponent(
-        JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
-      super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
-
-      int selectedRow = table.getSelectedRow();
-
-      // Set borders
-      if (selectedRow == row) {
-        setBorder(
-            new CompoundBorder(
-                UIManager.getBorder("Table.focusCellHighlightBorder"),
-                BorderFactory.createEmptyBorder(0, leftRightPad, 0, leftRightPad)));
-      } else {
-        setBorder(
-            new CompoundBorder(
-                BorderFactory.createEmptyBorder(1, 1, 1, 1),
-                BorderFactory.createEmptyBorder(0, leftRightPad, 0, leftRightPad)));
-      }
-
-      // Set background color
-      if (selectedRow == row && column == 1) {
-        setBackground(table.getSelectionBackground());
-      } else {
-        setBackground(table.getBackground());
-        setForeground(Color.BLACK);
-      }
-
-      return this;
-    }
-  }
-}
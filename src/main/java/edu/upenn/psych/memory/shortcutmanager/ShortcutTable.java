@@ -0,0 +1,599 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.Consumer;
+import javax.swing.Action;
+import javax.swing.BorderFactory;
+import javax.swing.JOptionPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.RowFilter;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import javax.swing.border.CompoundBorder;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
+
+class ShortcutTable extends JTable {
+  /**
+   * Row count above which the table is virtualized: column widths are measured on a sample of
+   * rows rather than on every row, so opening the window costs the same for any catalog size.
+   */
+  static final int VIRTUAL_THRESHOLD =
+      Integer.getInteger("shortcutmanager.virtualThreshold", 5_000);
+
+  private static final int WIDTH_SAMPLE_ROWS = 512;
+
+  private List<XAction> defaultXActions;
+  private final UserDB userdb;
+
+  @SuppressWarnings("UnusedVariable") // Listener is passed to UserDB for notifications
+  private final XActionListener listener;
+
+  private final int leftRightPad = 10;
+  private Consumer<String> conflictHandler =
+      msg -> JOptionPane.showMessageDialog(this, msg, "Error", JOptionPane.OK_OPTION);
+  private final ShortcutTableModel shortcutTableModel;
+  private ShortcutCellRenderer cellRenderer;
+  // Translates captured keys to canonical codes; replay uses the layout a trace was recorded on.
+  private KeyboardLayout keyboardLayout = KeyboardLayout.current();
+
+  public ShortcutTable(List<XAction> defaultXActions, UserDB userdb, XActionListener listener) {
+    this(defaultXActions, userdb, listener, new StartupProfile());
+  }
+
+  ShortcutTable(
+      List<XAction> defaultXActions,
+      UserDB userdb,
+      XActionListener listener,
+      StartupProfile startupProfile) {
+    StartupProfile.Timer phase = startupProfile.start(StartupProfile.Phase.BUILD_TABLE);
+    this.defaultXActions = defaultXActions;
+    this.userdb = userdb;
+    this.listener = listener;
+    this.shortcutTableModel = new ShortcutTableModel();
+
+    setModel(shortcutTableModel);
+    setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+    setFillsViewportHeight(true);
+    addKeyListener(new ShortcutKeyAdapter());
+    getTableHeader().setReorderingAllowed(false);
+    getTableHeader().setResizingAllowed(true);
+    phase.stop(getRowCount());
+
+    // An empty table, as ShortcutManager starts with, is sized once its rows are in.
+    if (getRowCount() > 0) {
+      phase = startupProfile.start(StartupProfile.Phase.SIZE_COLUMNS);
+      phase.stop(sizeColumns());
+    }
+  }
+
+  // Every row in a small table; evenly spaced rows in a virtualized one. Rows keep JTable's
+  // single uniform height, so nothing else is measured per row.
+  // Returns the number of rows measured.
+  int sizeColumns() {
+    // Model rows read straight from the catalog: going through the page cache would build and
+    // prefetch a page for every sample once samples are further apart than a page.
+    int rowCount = shortcutTableModel.getRowCount();
+    int step = rowCount > VIRTUAL_THRESHOLD ? Math.max(1, rowCount / WIDTH_SAMPLE_ROWS) : 1;
+    for (int c = 0; c < getColumnCount(); c++) {
+      int column = convertColumnIndexToModel(c);
+      int maxWidth = 0;
+      for (int r = 0; r < rowCount; r += step) {
+        Object value = shortcutTableModel.uncachedValueAt(r, column);
+        Component comp =
+            getCellRenderer(r, c).getTableCellRendererComponent(this, value, false, false, r, c);
+        maxWidth = Math.max(maxWidth, comp.getPreferredSize().width);
+      }
+      getColumnModel().getColumn(c).setMinWidth(maxWidth + 4 + 2 * leftRightPad);
+    }
+    return (rowCount + step - 1) / step;
+  }
+
+  KeyboardLayout keyboardLayout() {
+    return keyboardLayout;
+  }
+
+  void useKeyboardLayout(KeyboardLayout layout) {
+    this.keyboardLayout = layout;
+  }
+
+  // Adds the usage column, sorted most used first; clicking a header re-sorts.
+  void showUsage(UsageTracker tracker) {
+    shortcutTableModel.showUsage(tracker);
+    sizeColumns();
+    TableRowSorter<ShortcutTableModel> sorter = new TableRowSorter<>(shortcutTableModel);
+    sorter.setSortKeys(
+        List.of(new RowSorter.SortKey(ShortcutTableModel.USES_COLUMN, SortOrder.DESCENDING)));
+    setRowSorter(sorter);
+  }
+
+  /** Hides actions used fewer than {@code minimumUses} times; only once usage is shown. */
+  void filterByUsage(long minimumUses) {
+    if (getRowSorter() instanceof TableRowSorter<?> sorter) {
+      sorter.setRowFilter(
+          minimumUses <= 0
+              ? null
+              : new RowFilter<Object, Object>() {
+                @Override
+                public boolean include(Entry<?, ?> entry) {
+                  Object uses = entry.getValue(ShortcutTableModel.USES_COLUMN);
+                  return uses instanceof Long count && count >= minimumUses;
+                }
+              });
+    }
+  }
+
+  // Replaces the error dialog shown when an entered shortcut is taken, e.g. for headless replay.
+  void setConflictHandler(Consumer<String> conflictHandler) {
+    this.conflictHandler = conflictHandler;
+  }
+
+  @Override
+  protected void paintComponent(Graphics g) {
+    Metrics.count(Metrics.Op.TABLE_PAINT);
+    super.paintComponent(g);
+  }
+
+  @Override
+  public ShortcutCellRenderer getCellRenderer(int row, int column) {
+    return getDefaultRenderer(String.class);
+  }
+
+  @Override
+  public ShortcutCellRenderer getDefaultRenderer(Class<?> columnClass) {
+    // Created lazily because JTable's constructor asks for renderers before fields are set.
+    if (cellRenderer == null) {
+      cellRenderer = new ShortcutCellRenderer();
+    }
+    return cellRenderer;
+  }
+
+  @Override
+  public ShortcutTableModel getModel() {
+    return shortcutTableModel;
+  }
+
+  private final class ShortcutKeyAdapter extends KeyAdapter {
+    private final Set<Integer> standaloneKeyCodes = Set.of(KeyEvent.VK_RIGHT, KeyEvent.VK_LEFT);
+    private final Set<Integer> maskKeyCodes =
+        Set.of(KeyEvent.VK_CONTROL, KeyEvent.VK_SHIFT, KeyEvent.VK_ALT, KeyEvent.VK_META);
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+      int modifiers = e.getModifiersEx();
+      // Punctuation is bound by its position on the keyboard, whatever the layout labels it.
+      int extended = e.getExtendedKeyCode();
+      int code = keyboardLayout.toCanonical(extended != 0 ? extended : e.getKeyCode());
+      int selectedRow = getSelectedRow();
+
+      if (selectedRow >= 0) {
+        if ((code == KeyEvent.VK_BACK_SPACE || code == KeyEvent.VK_DELETE) && modifiers == 0) {
+          XAction rowXAction =
+              shortcutTableModel.xactionForRow(convertRowIndexToModel(selectedRow));
+          XAction newXAction = rowXAction.withShortcut(null);
+          doSwap(newXAction);
+        } else if (!maskKeyCodes.contains(code)) {
+          Shortcut.Result entered = Shortcut.of(code, modifiers);
+          if (!entered.isValid()) {
+            UIManager.getLookAndFeel().provideErrorFeedback(ShortcutTable.this);
+            return;
+          }
+          var enteredShortcut = entered.shortcut();
+          var rowXAction = shortcutTableModel.xactionForRow(convertRowIndexToModel(selectedRow));
+          var newXAction = rowXAction.withShortcut(enteredShortcut);
+
+          if (modifiers == InputEvent.SHIFT_DOWN_MASK || modifiers == 0) {
+            if (standaloneKeyCodes.contains(code)) {
+              doSwap(newXAction);
+            }
+          } else {
+            doSwap(newXAction);
+          }
+        }
+      }
+    }
+
+    private void doSwap(XAction toSwapIn) {
+      Shortcut shortcut = toSwapIn.shortcut();
+
+      // Check for duplicate shortcuts
+      if (shortcut != null) {
+        long start = Metrics.start();
+        boolean taken = userdb.ownerOf(shortcut) != null;
+        Metrics.stop(Metrics.Op.CONFLICT_CHECK, start);
+        if (taken) {
+          String msg = shortcut + " is already taken.";
+          conflictHandler.accept(msg);
+          return;
+        }
+      }
+
+      userdb.store(toSwapIn);
+      repaint();
+    }
+  }
+
+  final class ShortcutTableModel extends AbstractTableModel {
+    private static final int PAGE_SIZE = 128;
+    private static final int CACHED_PAGES = 16;
+
+    static final int USES_COLUMN = 3;
+
+    private List<String> headers = List.of("Action", "Shortcut", "Default");
+    private UsageTracker usage;
+    private final String noShortcutRepr = "";
+
+    // Display text for the catalog columns, built a page at a time as rows become visible. The
+    // user's shortcut is not cached since every edit would invalidate it; it is one map lookup.
+    private final Map<Integer, RowView[]> pages =
+        new LinkedHashMap<>(CACHED_PAGES, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Integer, RowView[]> eldest) {
+            return size() > CACHED_PAGES;
+          }
+        };
+    private int lastPage = -1;
+
+    private record RowView(String id, String name, String defaultShortcut) {}
+
+    void showUsage(UsageTracker tracker) {
+      usage = tracker;
+      headers = List.of("Action", "Shortcut", "Default", "Uses");
+      fireTableStructureChanged();
+    }
+
+    public XAction xactionForRow(int row) {
+      return defaultXActions.get(row);
+    }
+
+    /**
+     * Moves to a new catalog with one row event per added, removed or changed action. Falls back
+     * to a full refresh if the surviving actions were reordered.
+     */
+    void applyCatalogDiff(CatalogDiff diff, List<XAction> catalog) {
+      int oldSize = defaultXActions.size();
+      if (isAppend(diff, catalog)) {
+        defaultXActions = catalog;
+        // The last page may have been built while it was partly filled.
+        pages.remove(oldSize / PAGE_SIZE);
+        lastPage = -1;
+        fireTableRowsInserted(oldSize, catalog.size() - 1);
+        return;
+      }
+      Set<String> removedIds = CatalogDiff.idsOf(diff.removed());
+      Set<String> addedIds = CatalogDiff.idsOf(diff.added());
+      Set<String> changedIds = CatalogDiff.idsOf(diff.changed());
+
+      // Pages hold rows by position, so each splice drops any that listeners paged in.
+      SplicedRows rows = new SplicedRows(defaultXActions, catalog);
+      defaultXActions = rows;
+      for (int r = rows.size() - 1; r >= 0; r--) {
+        if (removedIds.contains(rows.id(r))) {
+          rows.delete(r);
+          dropPages();
+          fireTableRowsDeleted(r, r);
+        }
+      }
+
+      if (!survivorsInOrder(rows, catalog, addedIds)) {
+        defaultXActions = catalog;
+        dropPages();
+        fireTableDataChanged();
+        return;
+      }
+
+      // Consecutive added rows are announced together; a batch appended while loading is one run.
+      int inserted = -1;
+      for (int r = 0; r < catalog.size(); r++) {
+        String id = idOf(catalog, r);
+        if (addedIds.contains(id)) {
+          rows.insert(r, r);
+          inserted = inserted < 0 ? r : inserted;
+          continue;
+        }
+        if (inserted >= 0) {
+          dropPages();
+          fireTableRowsInserted(inserted, r - 1);
+          inserted = -1;
+        }
+        if (changedIds.contains(id)) {
+          rows.replace(r, r);
+          dropPages();
+          fireTableRowsUpdated(r, r);
+        }
+      }
+      if (inserted >= 0) {
+        dropPages();
+        fireTableRowsInserted(inserted, catalog.size() - 1);
+      }
+      defaultXActions = catalog;
+      dropPages();
+    }
+
+    private void dropPages() {
+      pages.clear();
+      lastPage = -1;
+    }
+
+    // True if the diff only adds actions, after every existing row, as while the catalog loads.
+    private boolean isAppend(CatalogDiff diff, List<XAction> catalog) {
+      int oldSize = defaultXActions.size();
+      if (!diff.removed().isEmpty()
+          || !diff.changed().isEmpty()
+          || diff.added().isEmpty()
+          || catalog.size() != oldSize + diff.added().size()) {
+        return false;
+      }
+      for (int r = 0; r < catalog.size(); r++) {
+        String expected =
+            r < oldSize ? idOf(defaultXActions, r) : diff.added().get(r - oldSize).getId();
+        if (!expected.equals(idOf(catalog, r))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    // True if the rows left after removals are the catalog's actions that were not added.
+    private static boolean survivorsInOrder(
+        SplicedRows rows, List<XAction> catalog, Set<String> addedIds) {
+      int survivor = 0;
+      for (int r = 0; r < catalog.size(); r++) {
+        String id = idOf(catalog, r);
+        if (!addedIds.contains(id)) {
+          if (survivor == rows.size() || !id.equals(rows.id(survivor))) {
+            return false;
+          }
+          survivor++;
+        }
+      }
+      return survivor == rows.size();
+    }
+
+    private static String idOf(List<XAction> xactions, int row) {
+      if (xactions instanceof Catalog catalog) {
+        return catalog.id(row);
+      }
+      return xactions instanceof SplicedRows rows ? rows.id(row) : xactions.get(row).getId();
+    }
+
+    /**
+     * The rows while a catalog diff is announced. Each row refers to a row of the old list or,
+     * once inserted or replaced, of the new one, so listeners see consistent rows without either
+     * catalog being copied out as {@link XAction}s.
+     */
+    private static final class SplicedRows extends AbstractList<XAction> implements RandomAccess {
+      private final List<XAction> before;
+      private final List<XAction> after;
+      // r is row r of before, ~r row r of after.
+      private final int[] refs;
+      private int size;
+
+      SplicedRows(List<XAction> before, List<XAction> after) {
+        this.before = before;
+        this.after = after;
+        this.refs = new int[Math.max(before.size(), after.size())];
+        this.size = before.size();
+        for (int r = 0; r < size; r++) {
+          refs[r] = r;
+        }
+      }
+
+      @Override
+      public XAction get(int row) {
+        int ref = refs[row];
+        return ref >= 0 ? before.get(ref) : after.get(~ref);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      String id(int row) {
+        int ref = refs[row];
+        return ref >= 0 ? idOf(before, ref) : idOf(after, ~ref);
+      }
+
+      void delete(int row) {
+        System.arraycopy(refs, row + 1, refs, row, size - row - 1);
+        size--;
+      }
+
+      void insert(int row, int afterRow) {
+        System.arraycopy(refs, row, refs, row + 1, size - row);
+        refs[row] = ~afterRow;
+        size++;
+      }
+
+      void replace(int row, int afterRow) {
+        refs[row] = ~afterRow;
+      }
+    }
+
+    @Override
+    public int getRowCount() {
+      return defaultXActions.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+      return headers.size();
+    }
+
+    @Override
+    public String getColumnName(int columnIndex) {
+      return headers.get(columnIndex);
+    }
+
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+      return columnIndex == USES_COLUMN ? Long.class : String.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int rowIndex, int columnIndex) {
+      return false;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+      if (rowIndex >= defaultXActions.size()
+          || columnIndex >= headers.size()
+          || rowIndex < 0
+          || columnIndex < 0) {
+        return null;
+      }
+
+      RowView view = rowView(rowIndex);
+      return switch (columnIndex) {
+        case 0 -> view.name();
+        case 1 -> {
+          Shortcut currentShortcut = userdb.retrieve(view.id());
+          yield currentShortcut != null ? currentShortcut.toString() : noShortcutRepr;
+        }
+        case 2 -> view.defaultShortcut();
+        case USES_COLUMN -> usage.count(view.id());
+        default -> null;
+      };
+    }
+
+    // What getValueAt returns, without building or caching the row's page.
+    Object uncachedValueAt(int row, int column) {
+      return switch (column) {
+        case 0 ->
+            defaultXActions instanceof Catalog catalog
+                ? catalog.name(row)
+                : defaultXActions.get(row).name();
+        case 1 -> {
+          Shortcut currentShortcut = userdb.retrieve(idAt(row));
+          yield currentShortcut != null ? currentShortcut.toString() : noShortcutRepr;
+        }
+        case 2 -> {
+          Shortcut shortcut =
+              defaultXActions instanceof Catalog catalog
+                  ? catalog.shortcut(row)
+                  : defaultXActions.get(row).shortcut();
+          yield shortcut != null ? shortcut.toString() : noShortcutRepr;
+        }
+        case USES_COLUMN -> usage.count(idAt(row));
+        default -> null;
+      };
+    }
+
+    private String idAt(int row) {
+      return idOf(defaultXActions, row);
+    }
+
+    private RowView rowView(int row) {
+      int page = row / PAGE_SIZE;
+      RowView[] views = pages.get(page);
+      if (views == null) {
+        Metrics.count(Metrics.Op.CACHE_MISS);
+        views = loadPage(page);
+      } else {
+        Metrics.count(Metrics.Op.CACHE_HIT);
+      }
+      if (page != lastPage) {
+        lastPage = page;
+        prefetch(page + 1);
+        prefetch(page - 1);
+      }
+      return views[row - page * PAGE_SIZE];
+    }
+
+    private RowView[] loadPage(int page) {
+      int from = page * PAGE_SIZE;
+      int to = Math.min(from + PAGE_SIZE, defaultXActions.size());
+      RowView[] views = new RowView[to - from];
+      for (int r = from; r < to; r++) {
+        String id;
+        String name;
+        Shortcut shortcut;
+        if (defaultXActions instanceof Catalog catalog) {
+          id = catalog.id(r);
+          name = catalog.name(r);
+          shortcut = catalog.shortcut(r);
+        } else {
+          XAction xaction = defaultXActions.get(r);
+          id = xaction.getId();
+          name = xaction.name();
+          shortcut = xaction.shortcut();
+        }
+        views[r - from] =
+            new RowView(id, name, shortcut != null ? shortcut.toString() : noShortcutRepr);
+      }
+      pages.put(page, views);
+      return views;
+    }
+
+    // Builds a neighbouring page after the current paint, so scrolling onto it is a cache hit.
+    private void prefetch(int page) {
+      if (!SwingUtilities.isEventDispatchThread()
+          || page < 0
+          || page * PAGE_SIZE >= defaultXActions.size()
+          || pages.containsKey(page)) {
+        return;
+      }
+      SwingUtilities.invokeLater(
+          () -> {
+            if (page * PAGE_SIZE < defaultXActions.size() && !pages.containsKey(page)) {
+              loadPage(page);
+            }
+          });
+    }
+
+    @Override
+    public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
+      // Not editable
+    }
+  }
+
+  private final class ShortcutCellRenderer extends DefaultTableCellRenderer {
+    @Override
+    public Component getTableCellRendererComponent(
+        JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
+      super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+
+      int selectedRow = table.getSelectedRow();
+
+      // Set borders
+      if (selectedRow == row) {
+        setBorder(
+            new CompoundBorder(
+                UIManager.getBorder("Table.focusCellHighlightBorder"),
+                BorderFactory.createEmptyBorder(0, leftRightPad, 0, leftRightPad)));
+      } else {
+        setBorder(
+            new CompoundBorder(
+                BorderFactory.createEmptyBorder(1, 1, 1, 1),
+                BorderFactory.createEmptyBorder(0, leftRightPad, 0, leftRightPad)));
+      }
+
+      // Set background color
+      if (selectedRow == row && column == 1) {
+        setBackground(table.getSelectionBackground());
+      } else {
+        setBackground(table.getBackground());
+        setForeground(Color.BLACK);
+      }
+
+      return this;
+    }
+  }
+}
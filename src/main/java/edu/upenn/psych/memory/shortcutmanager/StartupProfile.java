@@ -0,0 +1,139 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Where the time went while a {@link ShortcutManager} started up, phase by phase, with a count of
+ * the work each phase did, and how soon the table first showed rows.
+ *
+ * <p>The catalog is parsed on a background thread while the window is built, and its rows are
+ * added in several {@link Phase#NOTIFY} and {@link Phase#POPULATE} steps, so the phases overlap
+ * and their total is the work done rather than the time the user waited.
+ *
+ * <p>Always collected: a phase costs two clock reads and three small allocations. Each phase is
+ * also committed as an {@code edu.upenn.psych.memory.shortcutmanager.StartupPhase} JFR event,
+ * which costs nothing unless a flight recording is running, so startup can be examined alongside
+ * GC and class loading with {@code -XX:StartFlightRecording}.
+ */
+public final class StartupProfile {
+
+  public enum Phase {
+    PARSE("actions parsed"),
+    LOAD_KEYMAP("prefs get/put/remove calls"),
+    BUILD_TABLE("rows"),
+    SIZE_COLUMNS("rows measured"),
+    BUILD_LAYOUT("components"),
+    NOTIFY("listener calls"),
+    POPULATE("rows added");
+
+    private final String countLabel;
+
+    Phase(String countLabel) {
+      this.countLabel = countLabel;
+    }
+
+    public String countLabel() {
+      return countLabel;
+    }
+  }
+
+  public record Step(Phase phase, long nanos, long count) {}
+
+  @Name("edu.upenn.psych.memory.shortcutmanager.StartupPhase")
+  @Label("Shortcut Manager Startup Phase")
+  @Category("Shortcut Manager")
+  @StackTrace(false)
+  static final class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Count")
+    long count;
+  }
+
+  /** A phase in progress; {@link #stop} it once. */
+  final class Timer {
+    private final Phase phase;
+    private final long start = System.nanoTime();
+    private final PhaseEvent event = new PhaseEvent();
+
+    private Timer(Phase phase) {
+      this.phase = phase;
+      event.begin();
+    }
+
+    void stop(long count) {
+      long nanos = System.nanoTime() - start;
+      event.end();
+      if (event.shouldCommit()) {
+        event.phase = phase.name();
+        event.count = count;
+        event.commit();
+      }
+      synchronized (StartupProfile.this) {
+        steps.add(new Step(phase, nanos, count));
+      }
+    }
+  }
+
+  private final List<Step> steps = new ArrayList<>();
+  private final long created = System.nanoTime();
+  private volatile long firstRowsNanos = -1;
+
+  Timer start(Phase phase) {
+    return new Timer(phase);
+  }
+
+  void firstRowsShown() {
+    if (firstRowsNanos < 0) {
+      firstRowsNanos = System.nanoTime() - created;
+    }
+  }
+
+  /** Time from the start of construction until the table first had rows, or -1 until then. */
+  public long firstRowsNanos() {
+    return firstRowsNanos;
+  }
+
+  /** The phases in the order they finished. */
+  public synchronized List<Step> steps() {
+    return Collections.unmodifiableList(new ArrayList<>(steps));
+  }
+
+  public synchronized long totalNanos() {
+    long total = 0;
+    for (Step step : steps) {
+      total += step.nanos();
+    }
+    return total;
+  }
+
+  /** One line per phase with milliseconds, share of the total and count. */
+  @Override
+  public synchronized String toString() {
+    long total = Math.max(1, totalNanos());
+    StringBuilder sb = new StringBuilder();
+    for (Step step : steps) {
+      sb.append(
+          String.format(
+              "%-13s %8.1f ms %5.1f%%  %d %s%n",
+              step.phase(),
+              step.nanos() / 1e6,
+              100.0 * step.nanos() / total,
+              step.count(),
+              step.phase().countLabel()));
+    }
+    sb.append(String.format("%-13s %8.1f ms%n", "TOTAL", total / 1e6));
+    if (firstRowsNanos >= 0) {
+      sb.append(String.format("%-13s %8.1f ms after start%n", "FIRST ROWS", firstRowsNanos / 1e6));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,164 @@
+package edu.upenn.psych.memory.shortcutmanager;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * Counts how often each action is invoked, for tuning defaults and ordering the manager's table.
+ *
+ * <p>The host looks up an action's ordinal once with {@link #ordinalOf} and calls {@link
+ * #record(int)} from its dispatch path: an array index and a {@link LongAdder} increment, with no
+ * map lookup or lock. Totals are written to the {@code usage} child of the namespace node every
+ * snapshot interval, and on {@link #close}.
+ */
+public final class UsageTracker implements Closeable {
+  private static final String USAGE_NODE = "usage";
+
+  private final Preferences node;
+  private final ScheduledExecutorService snapshots;
+
+  // Replaced as one when the catalog changes, so lookups and record() need no lock.
+  private record Counters(Catalog catalog, LongAdder[] adders) {}
+
+  private volatile Counters counters;
+  // Guarded by this: the totals last copied for writing, and those of actions since removed.
+  private long[] written;
+  private final Map<String, Long> removed = new HashMap<>();
+  // Held while copying and writing, so an older copy never overwrites a newer total.
+  private final Object writeLock = new Object();
+
+  public UsageTracker(String namespace, List<XAction> catalog, Duration snapshotInterval) {
+    this.node = Preferences.userRoot().node(namespace).node(USAGE_NODE);
+    Catalog initial = Catalog.of(catalog);
+    LongAdder[] adders = new LongAdder[initial.size()];
+    this.written = new long[initial.size()];
+    for (int i = 0; i < adders.length; i++) {
+      adders[i] = loadCounter(initial.id(i));
+      written[i] = adders[i].sum();
+    }
+    this.counters = new Counters(initial, adders);
+
+    this.snapshots =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "shortcut-usage-snapshot");
+              thread.setDaemon(true);
+              return thread;
+            });
+    long millis = snapshotInterval.toMillis();
+    snapshots.scheduleWithFixedDelay(this::snapshot, millis, millis, TimeUnit.MILLISECONDS);
+  }
+
+  private LongAdder loadCounter(String id) {
+    LongAdder counter = new LongAdder();
+    counter.add(node.getLong(id, 0L));
+    return counter;
+  }
+
+  /**
+   * Returns the ordinal to pass to {@link #record(int)}, or -1 for an unknown id. Ordinals are
+   * positions in the current catalog; look them up again after the catalog is reloaded.
+   */
+  public int ordinalOf(String id) {
+    return counters.catalog().indexOfId(id);
+  }
+
+  public void record(int ordinal) {
+    LongAdder[] current = counters.adders();
+    if (ordinal >= 0 && ordinal < current.length) {
+      current[ordinal].increment();
+    }
+  }
+
+  public void record(String id) {
+    record(ordinalOf(id));
+  }
+
+  public long count(String id) {
+    Counters current = counters;
+    int ordinal = current.catalog().indexOfId(id);
+    return ordinal >= 0 ? current.adders()[ordinal].sum() : 0L;
+  }
+
+  /** Writes every total that changed since the last snapshot to the preferences backend. */
+  public void snapshot() {
+    synchronized (writeLock) {
+      Map<String, Long> changed = changes();
+      if (changed.isEmpty()) {
+        return;
+      }
+      changed.forEach(node::putLong);
+      try {
+        node.flush();
+      } catch (BackingStoreException e) {
+        System.err.println(getClass().getName() + " could not flush usage counts: " + e);
+      }
+    }
+  }
+
+  // Copies the totals not yet written and marks them written.
+  private synchronized Map<String, Long> changes() {
+    Map<String, Long> changed = new LinkedHashMap<>(removed);
+    removed.clear();
+    Counters current = counters;
+    for (int i = 0; i < written.length; i++) {
+      long total = current.adders()[i].sum();
+      if (total != written[i]) {
+        changed.put(current.catalog().id(i), total);
+        written[i] = total;
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Moves to a new catalog, carrying each surviving action's counter over by id. Totals of removed
+   * actions are written with the next snapshot.
+   */
+  synchronized void applyCatalog(List<XAction> next) {
+    Counters current = counters;
+    Catalog nextCatalog = Catalog.of(next);
+    LongAdder[] nextAdders = new LongAdder[nextCatalog.size()];
+    long[] nextWritten = new long[nextCatalog.size()];
+    for (int i = 0; i < nextAdders.length; i++) {
+      String id = nextCatalog.id(i);
+      int previous = current.catalog().indexOfId(id);
+      if (previous >= 0) {
+        nextAdders[i] = current.adders()[previous];
+        nextWritten[i] = written[previous];
+        continue;
+      }
+      nextAdders[i] = loadCounter(id);
+      nextWritten[i] = nextAdders[i].sum();
+      Long unwritten = removed.remove(id);
+      if (unwritten != null) {
+        nextAdders[i].add(unwritten - nextWritten[i]);
+      }
+    }
+    for (int i = 0; i < written.length; i++) {
+      String id = current.catalog().id(i);
+      long total = current.adders()[i].sum();
+      if (!nextCatalog.containsId(id) && total != written[i]) {
+        removed.put(id, total);
+      }
+    }
+    written = nextWritten;
+    counters = new Counters(nextCatalog, nextAdders);
+  }
+
+  @Override
+  public void close() {
+    snapshots.shutdown();
+    snapshot();
+  }
+}
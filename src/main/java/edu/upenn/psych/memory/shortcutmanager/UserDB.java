@@ -1,76 +1,954 @@
 package edu.upenn.psych.memory.shortcutmanager;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 
+/**
+ * The user's keymap, persisted as overrides of the default catalog.
+ *
+ * <p>Only bindings that differ from their default are written to Preferences; an action the user
+ * explicitly unbound is written as a {@code "#"} tombstone. Lookups overlay the in-memory
+ * overrides on the defaults, so restoring defaults is a single clear of the node. The only write at
+ * startup removes defaults that older versions mirrored into the store.
+ *
+ * <p>Overrides are grouped into named profiles, stored side by side under the namespace, of which
+ * one is active at a time.
+ */
 public class UserDB {
-  @SuppressWarnings("UnusedVariable") // Used in constructor for prefs.node()
+  public static final String DEFAULT_PROFILE = "default";
+
   private final String namespace;
 
-  private final List<XAction> defaultXActions;
+  private Catalog defaults;
   private final XActionListener listener;
+  private final ChangePublisher changes = new ChangePublisher();
   private final Preferences prefs;
 
+  // Profiles loaded so far, by name. The active one is also held in keymap.
+  private final Map<String, Keymap> profiles = new ConcurrentHashMap<>();
+  private volatile Keymap keymap;
+  private final BindingHistory history = new BindingHistory(HISTORY_CAPACITY);
+
+  // Set while the keymap is shared with other processes; see shareAcrossProcesses.
+  private volatile SharedStore shared;
+  private boolean mutating;
+  // Set by shared edits that change the store without replacing the keymap.
+  private boolean profilesChanged;
+  // Preferences get, put and remove calls made while loading keymaps; see loadCalls.
+  private int loadCalls;
+
   private static final String NO_SHORTCUT = "#";
+  private static final String ID_FIELD = "id";
+  private static final String SHORTCUT_FIELD = "shortcut";
+  private static final String PROFILES_NODE = "profiles";
+  private static final String ACTIVE_PROFILE_KEY = "active";
+  private static final int HISTORY_CAPACITY = 256;
 
   public UserDB(String namespace, List<XAction> defaultXActions, XActionListener listener) {
+    this(Preferences.userRoot(), namespace, defaultXActions, listener);
+  }
+
+  // Stores the keymap under another preferences tree, such as an InMemoryPreferences.
+  UserDB(
+      Preferences root, String namespace, List<XAction> defaultXActions, XActionListener listener) {
     if (!namespace.startsWith("/")) {
       throw new IllegalArgumentException("namespace " + namespace + " is not absolute");
     }
 
     this.namespace = namespace;
-    this.defaultXActions = defaultXActions;
+    this.defaults = Catalog.of(defaultXActions);
     this.listener = listener;
-    this.prefs = Preferences.userRoot().node(namespace);
+    this.prefs = root.node(namespace);
+
+    String active = DEFAULT_PROFILE;
+    try {
+      if (prefs.nodeExists(PROFILES_NODE)) {
+        active = prefs.node(PROFILES_NODE).get(ACTIVE_PROFILE_KEY, DEFAULT_PROFILE);
+        loadCalls++;
+      }
+    } catch (BackingStoreException e) {
+      System.err.println(getClass().getName() + " could not read active profile: " + e);
+    }
+    this.keymap = loadKeymap(active);
+    profiles.put(active, keymap);
+  }
+
+  /**
+   * An immutable snapshot of one profile's overrides. The default profile lives directly in the
+   * namespace node, as in versions without profiles; the others are child nodes of {@value
+   * #PROFILES_NODE}.
+   *
+   * @param overrides present with an empty value means explicitly unbound
+   */
+  private record Keymap(
+      String profile, Preferences node, Map<String, Optional<Shortcut>> overrides) {
+    Keymap withOverrides(Map<String, Optional<Shortcut>> next) {
+      return new Keymap(profile, node, Collections.unmodifiableMap(next));
+    }
+  }
+
+  private Keymap loadKeymap(String profile) {
+    Preferences node =
+        DEFAULT_PROFILE.equals(profile) ? prefs : prefs.node(PROFILES_NODE).node(profile);
+    return new Keymap(profile, node, Collections.unmodifiableMap(loadOverrides(node)));
+  }
+
+  private Map<String, Optional<Shortcut>> loadOverrides(Preferences node) {
+    Map<String, Optional<Shortcut>> result = new HashMap<>();
+    String[] keys;
+    try {
+      keys = node.keys();
+    } catch (BackingStoreException e) {
+      System.err.println(getClass().getName() + " could not read stored shortcuts: " + e);
+      return result;
+    }
+
+    boolean removed = false;
+    for (String key : keys) {
+      String storedStr = node.get(key, null);
+      loadCalls++;
+      Optional<Shortcut> value;
+      if (storedStr == null) {
+        continue;
+      } else if (NO_SHORTCUT.equals(storedStr)) {
+        value = Optional.empty();
+      } else {
+        Shortcut shortcut = Shortcut.fromInternalForm(storedStr);
+        if (shortcut == null) {
+          System.err.println(getClass().getName() + " won't retrieve() unparseable: " + storedStr);
+          continue;
+        }
+        value = Optional.of(shortcut);
+      }
+
+      // Older versions mirrored every default into the store; those entries are not overrides,
+      // and left in place would pin the action to this default once the catalog changes it.
+      if (isDefault(key, value.orElse(null))) {
+        node.remove(key);
+        loadCalls++;
+        removed = true;
+      } else {
+        result.put(key, value);
+      }
+    }
+    if (removed) {
+      flush(node);
+    }
+    return result;
+  }
+
+  /**
+   * Preferences get, put and remove calls made so far while loading profiles, including the one
+   * opened by the constructor; what startup profiles report for loading the keymap.
+   */
+  int loadCalls() {
+    return loadCalls;
+  }
+
+  private void flush(Preferences node) {
+    try {
+      node.flush();
+    } catch (BackingStoreException e) {
+      System.err.println(getClass().getName() + " could not flush stored shortcuts: " + e);
+    }
+  }
+
+  private boolean isDefault(String id, Shortcut shortcut) {
+    int index = defaults.indexOfId(id);
+    return index >= 0 && Objects.equals(shortcut, defaults.shortcut(index));
   }
 
   public void store(XAction xaction) {
+    mutate(() -> storeOne(xaction));
+  }
+
+  private void storeOne(XAction xaction) {
+    long start = Metrics.start();
     String key = xaction.getId();
-    Shortcut oldShortcut = retrieveAll().get(key);
+    Shortcut oldShortcut = retrieve(key);
+    Shortcut shortcut = xaction.shortcut();
 
-    String value;
-    if (xaction.shortcut() != null) {
-      value = xaction.shortcut().getInternalForm();
+    Keymap current = keymap;
+    Map<String, Optional<Shortcut>> next = new HashMap<>(current.overrides());
+    if (isDefault(key, shortcut)) {
+      next.remove(key);
+      current.node().remove(key);
     } else {
-      value = NO_SHORTCUT;
+      next.put(key, Optional.ofNullable(shortcut));
+      current.node().put(key, encode(Optional.ofNullable(shortcut)));
+    }
+    setKeymap(current.withOverrides(next));
+    if (!Objects.equals(oldShortcut, shortcut)) {
+      history.recordChange(key, Shortcut.pack(oldShortcut), Shortcut.pack(shortcut));
     }
 
+    long dispatchStart = Metrics.start();
     listener.xActionUpdated(xaction, oldShortcut);
-    prefs.put(key, value);
+    changes.publish(List.of(new XActionListener.Update(xaction, oldShortcut)));
+    Metrics.stop(Metrics.Op.LISTENER_DISPATCH, dispatchStart);
+    Metrics.stop(Metrics.Op.STORE, start);
   }
 
   public Shortcut retrieve(String id) {
-    String key = id;
-    String storedStr = prefs.get(key, null);
+    long start = Metrics.start();
+    try {
+      Optional<Shortcut> override = keymap.overrides().get(id);
+      if (override != null) {
+        return override.orElse(null);
+      }
+      int index = defaults.indexOfId(id);
+      return index >= 0 ? defaults.shortcut(index) : null;
+    } finally {
+      Metrics.stop(Metrics.Op.RETRIEVE, start);
+    }
+  }
 
-    if (storedStr == null || NO_SHORTCUT.equals(storedStr)) {
-      return null;
-    } else {
-      Shortcut shortcut = Shortcut.fromInternalForm(storedStr);
-      if (shortcut == null) {
-        System.err.println(getClass().getName() + " won't retrieve() unparseable: " + storedStr);
-        return null;
+  /**
+   * Returns the id of the action bound to {@code shortcut} in the active profile, or null if no
+   * action is. Scans the overrides and the catalog's shortcuts in place, without building a map.
+   */
+  public String ownerOf(Shortcut shortcut) {
+    Map<String, Optional<Shortcut>> overrides = keymap.overrides();
+    for (Map.Entry<String, Optional<Shortcut>> override : overrides.entrySet()) {
+      if (shortcut.equals(override.getValue().orElse(null))
+          && defaults.containsId(override.getKey())) {
+        return override.getKey();
+      }
+    }
+    for (int i = 0; i < defaults.size(); i++) {
+      if (shortcut.equals(defaults.shortcut(i)) && !overrides.containsKey(defaults.id(i))) {
+        return defaults.id(i);
+      }
+    }
+    return null;
+  }
+
+  // The active profile's overrides; an empty value means explicitly unbound.
+  Map<String, Optional<Shortcut>> overrides() {
+    return keymap.overrides();
+  }
+
+  private void setKeymap(Keymap next) {
+    keymap = next;
+    profiles.put(next.profile(), next);
+  }
+
+  public String getActiveProfile() {
+    return keymap.profile();
+  }
+
+  /** Returns the names of all stored profiles, starting with {@value #DEFAULT_PROFILE}. */
+  public List<String> getProfiles() {
+    List<String> names = new ArrayList<>();
+    try {
+      if (prefs.nodeExists(PROFILES_NODE)) {
+        names.addAll(Arrays.asList(prefs.node(PROFILES_NODE).childrenNames()));
+      }
+    } catch (BackingStoreException e) {
+      System.err.println(getClass().getName() + " could not list profiles: " + e);
+    }
+    for (String loaded : profiles.keySet()) {
+      if (!names.contains(loaded)) {
+        names.add(loaded);
       }
-      return shortcut;
     }
+    names.remove(DEFAULT_PROFILE);
+    names.sort(null);
+    names.add(0, DEFAULT_PROFILE);
+    return names;
   }
 
+  /**
+   * Makes {@code profile} the active keymap, creating it with no overrides if it does not exist.
+   * A profile is read from the store the first time it is used; after that switching only swaps
+   * the snapshot. Listeners receive the actions whose binding differs between the two profiles
+   * in a single {@link XActionListener#xActionsUpdated} call.
+   */
+  public void switchProfile(String profile) {
+    checkProfileName(profile);
+    if (keymap.profile().equals(profile)) {
+      return;
+    }
+    mutate(() -> switchTo(profile, true));
+  }
+
+  /**
+   * Reads and edits an existing {@code profile} through this instance only. Unlike {@link
+   * #switchProfile}, the profile other instances open is left as it is.
+   *
+   * @return false, changing nothing, if there is no such profile
+   */
+  boolean useProfile(String profile) {
+    if (!getProfiles().contains(profile)) {
+      return false;
+    }
+    if (!keymap.profile().equals(profile)) {
+      switchTo(profile, false);
+    }
+    return true;
+  }
+
+  private void switchTo(String profile, boolean persist) {
+    Keymap previous = keymap;
+    if (shared != null) {
+      // Another process may have edited it since it was cached.
+      profiles.remove(profile);
+      String path = DEFAULT_PROFILE.equals(profile) ? "" : PROFILES_NODE + "/" + profile;
+      if (nodeExists(prefs, path)) {
+        syncNode(prefs.node(path));
+      }
+    }
+    Keymap next = profiles.computeIfAbsent(profile, this::loadKeymap);
+    keymap = next;
+    history.clear();
+
+    if (persist) {
+      Preferences profilesNode = prefs.node(PROFILES_NODE);
+      if (DEFAULT_PROFILE.equals(profile)) {
+        profilesNode.remove(ACTIVE_PROFILE_KEY);
+      } else {
+        profilesNode.put(ACTIVE_PROFILE_KEY, profile);
+      }
+    }
+
+    dispatch(diffOverrides(previous.overrides(), next.overrides()));
+  }
+
+  /** Deletes a stored profile. The default profile and the active profile cannot be deleted. */
+  public void deleteProfile(String profile) {
+    checkProfileName(profile);
+    if (DEFAULT_PROFILE.equals(profile) || keymap.profile().equals(profile)) {
+      throw new IllegalArgumentException("cannot delete profile " + profile + " while in use");
+    }
+    profiles.remove(profile);
+    mutate(
+        () -> {
+          try {
+            if (prefs.nodeExists(PROFILES_NODE + "/" + profile)) {
+              prefs.node(PROFILES_NODE).node(profile).removeNode();
+              profilesChanged = true;
+            }
+          } catch (BackingStoreException e) {
+            System.err.println(
+                getClass().getName() + " could not delete profile " + profile + ": " + e);
+          }
+        });
+  }
+
+  private static void checkProfileName(String profile) {
+    if (profile.isEmpty()
+        || profile.contains("/")
+        || profile.length() > Preferences.MAX_NAME_LENGTH) {
+      throw new IllegalArgumentException("invalid profile name: " + profile);
+    }
+  }
+
+  /**
+   * Restores the default bindings.
+   *
+   * @param overwrite if true, discards every user override; if false, there is nothing to do
+   *     because defaults are never copied into the store
+   */
   public void persistDefaults(boolean overwrite) {
-    for (XAction xact : defaultXActions) {
-      if (overwrite || retrieve(xact.getId()) == null) {
-        store(xact);
+    if (!overwrite) {
+      return;
+    }
+    mutate(this::clearOverrides);
+  }
+
+  private void clearOverrides() {
+    long start = Metrics.start();
+
+    Keymap current = keymap;
+    List<XActionListener.Update> updates = diffOverrides(current.overrides(), Map.of());
+    setKeymap(current.withOverrides(Map.of()));
+    if (!current.overrides().isEmpty()) {
+      history.recordSnapshot(current.overrides(), keymap.overrides());
+    }
+    try {
+      current.node().clear();
+    } catch (BackingStoreException e) {
+      System.err.println(getClass().getName() + " could not clear stored shortcuts: " + e);
+    }
+
+    dispatch(updates);
+    Metrics.stop(Metrics.Op.PERSIST_DEFAULTS, start);
+  }
+
+  public boolean canUndo() {
+    return history.canUndo();
+  }
+
+  public boolean canRedo() {
+    return history.canRedo();
+  }
+
+  /** Runs {@code onChange}, on the editing thread, whenever canUndo or canRedo may change. */
+  void onHistoryChange(Runnable onChange) {
+    history.onChange(onChange);
+  }
+
+  /**
+   * Reverts the most recent edit in the active profile: a single rebind, a restore of defaults or
+   * an import. Listeners receive one {@link XActionListener#xActionsUpdated} call.
+   *
+   * @return false if there was nothing to undo
+   */
+  public boolean undo() {
+    return mutateAndGet(() -> replay(history.undo()));
+  }
+
+  /**
+   * Reapplies the most recently undone edit.
+   *
+   * @return false if there was nothing to redo
+   */
+  public boolean redo() {
+    return mutateAndGet(() -> replay(history.redo()));
+  }
+
+  private boolean replay(BindingHistory.Step step) {
+    if (step == null) {
+      return false;
+    }
+    Map<String, Optional<Shortcut>> current = keymap.overrides();
+    Map<String, Optional<Shortcut>> next;
+    if (step.snapshot() != null) {
+      next = step.snapshot();
+    } else {
+      next = new HashMap<>(current);
+      Shortcut shortcut = Shortcut.unpack(step.to());
+      if (isDefault(step.id(), shortcut)) {
+        next.remove(step.id());
+      } else {
+        next.put(step.id(), Optional.ofNullable(shortcut));
+      }
+    }
+
+    List<XActionListener.Update> updates = diffOverrides(current, next);
+    writeOverrides(next);
+    dispatch(updates);
+    return true;
+  }
+
+  /**
+   * Switches to a new version of the default catalog, e.g. after the actions file was edited.
+   * Listeners hear about every added, removed or changed action in one batch; removed actions are
+   * reported as unbound. Overrides of removed actions are kept so they apply again if the action
+   * comes back.
+   *
+   * @return the number of updates the listener heard
+   */
+  public int applyCatalogDiff(CatalogDiff diff, List<XAction> catalog) {
+    List<XActionListener.Update> updates = new ArrayList<>();
+    for (XAction xact : diff.removed()) {
+      updates.add(new XActionListener.Update(xact.withShortcut(null), retrieve(xact.getId())));
+    }
+    List<Shortcut> changedOld = new ArrayList<>();
+    for (XAction xact : diff.changed()) {
+      changedOld.add(retrieve(xact.getId()));
+    }
+    defaults = Catalog.of(catalog);
+    dropMirroredDefaults(diff.added());
+
+    for (int i = 0; i < diff.changed().size(); i++) {
+      XAction xact = diff.changed().get(i);
+      updates.add(
+          new XActionListener.Update(xact.withShortcut(retrieve(xact.getId())), changedOld.get(i)));
+    }
+    for (XAction xact : diff.added()) {
+      updates.add(new XActionListener.Update(xact.withShortcut(retrieve(xact.getId())), null));
+    }
+    dispatch(updates);
+    return updates.size();
+  }
+
+  // Overrides of actions missing from the catalog when they were loaded, as when the keymap is
+  // opened before the catalog has been read, could not be checked for mirrored defaults then.
+  private synchronized void dropMirroredDefaults(List<XAction> added) {
+    Keymap current = keymap;
+    Map<String, Optional<Shortcut>> next = null;
+    for (XAction xact : added) {
+      Optional<Shortcut> override = current.overrides().get(xact.getId());
+      if (override != null && isDefault(xact.getId(), override.orElse(null))) {
+        next = next != null ? next : new HashMap<>(current.overrides());
+        next.remove(xact.getId());
+        current.node().remove(xact.getId());
+      }
+    }
+    if (next != null) {
+      setKeymap(current.withOverrides(next));
+      flush(current.node());
+    }
+  }
+
+  public void exportKeymap(Path file, KeymapFormat format) throws IOException {
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+      exportKeymap(out, format);
+    }
+  }
+
+  /**
+   * Streams the user's overrides to {@code out}, one record per action, sorted by id. Actions left
+   * at their default are not written. The stream is flushed but not closed.
+   */
+  public void exportKeymap(OutputStream out, KeymapFormat format) throws IOException {
+    Map<String, Optional<Shortcut>> overrides = keymap.overrides();
+    String[] ids = overrides.keySet().toArray(new String[0]);
+    Arrays.sort(ids);
+
+    try (JsonGenerator generator = format.factory().createGenerator(out)) {
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      for (String id : ids) {
+        Shortcut shortcut = overrides.get(id).orElse(null);
+        generator.writeStartObject();
+        generator.writeStringField(ID_FIELD, id);
+        if (shortcut != null) {
+          generator.writeStringField(SHORTCUT_FIELD, shortcut.getInternalForm());
+        } else {
+          generator.writeNullField(SHORTCUT_FIELD);
+        }
+        generator.writeEndObject();
+      }
+    }
+  }
+
+  public ImportReport importKeymap(Path file, KeymapFormat format, boolean replace)
+      throws IOException {
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+      return importKeymap(in, format, replace);
+    }
+  }
+
+  /**
+   * Reads a keymap written by {@link #exportKeymap} and applies it as one batch.
+   *
+   * <p>Records for actions missing from the catalog, or whose shortcut cannot be parsed, are
+   * skipped and listed in the report. If the resulting keymap would bind one shortcut to several
+   * actions, nothing is applied and the collisions are listed instead. Listeners receive a single
+   * {@link XActionListener#xActionsUpdated} call.
+   *
+   * @param replace if true, actions absent from the file revert to their defaults; otherwise they
+   *     keep their current binding
+   */
+  public ImportReport importKeymap(InputStream in, KeymapFormat format, boolean replace)
+      throws IOException {
+    Map<String, Optional<Shortcut>> incoming = new LinkedHashMap<>();
+    List<String> problems = new ArrayList<>();
+    int records = 0;
+
+    try (JsonParser parser = format.factory().createParser(in)) {
+      parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+      for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+        if (token != JsonToken.START_OBJECT) {
+          throw new JsonParseException(parser, "expected a keymap record but found " + token);
+        }
+        String id = null;
+        String internalForm = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String field = parser.currentName();
+          parser.nextToken();
+          switch (field) {
+            case ID_FIELD -> id = parser.getValueAsString();
+            case SHORTCUT_FIELD -> internalForm = parser.getValueAsString();
+            default -> parser.skipChildren();
+          }
+        }
+        records++;
+
+        if (id == null) {
+          problems.add("record " + records + " has no id");
+        } else if (!defaults.containsId(id)) {
+          problems.add("record " + records + " names unknown action " + id);
+        } else if (internalForm == null) {
+          incoming.put(id, Optional.empty());
+        } else {
+          Shortcut shortcut = Shortcut.fromInternalForm(internalForm);
+          if (shortcut == null) {
+            problems.add("record " + records + " has unparseable shortcut " + internalForm);
+          } else {
+            incoming.put(id, Optional.of(shortcut));
+          }
+        }
+      }
+    }
+
+    return applyBatch(incoming, replace, records, problems);
+  }
+
+  /**
+   * Stores several bindings as one batch, with the same conflict rules and single notification
+   * as {@link #importKeymap}. Actions not in the catalog are skipped and reported.
+   */
+  public ImportReport storeAll(Collection<XAction> xactions) {
+    Map<String, Optional<Shortcut>> incoming = new LinkedHashMap<>();
+    List<String> problems = new ArrayList<>();
+    for (XAction xaction : xactions) {
+      if (defaults.containsId(xaction.getId())) {
+        incoming.put(xaction.getId(), Optional.ofNullable(xaction.shortcut()));
+      } else {
+        problems.add("unknown action " + xaction.getId());
+      }
+    }
+    return applyBatch(incoming, false, xactions.size(), problems);
+  }
+
+  private ImportReport applyBatch(
+      Map<String, Optional<Shortcut>> incoming,
+      boolean replace,
+      int records,
+      List<String> problems) {
+    return mutateAndGet(() -> applyBatchNow(incoming, replace, records, problems));
+  }
+
+  private ImportReport applyBatchNow(
+      Map<String, Optional<Shortcut>> incoming,
+      boolean replace,
+      int records,
+      List<String> problems) {
+    Map<String, Optional<Shortcut>> current = keymap.overrides();
+    Map<String, Optional<Shortcut>> next = new HashMap<>(replace ? Map.of() : current);
+    for (Map.Entry<String, Optional<Shortcut>> entry : incoming.entrySet()) {
+      String id = entry.getKey();
+      if (isDefault(id, entry.getValue().orElse(null))) {
+        next.remove(id);
+      } else {
+        next.put(id, entry.getValue());
+      }
+    }
+
+    List<String> conflicts = findConflicts(next);
+    if (!conflicts.isEmpty()) {
+      return new ImportReport(records, 0, false, problems, conflicts);
+    }
+
+    List<XActionListener.Update> updates = diffOverrides(current, next);
+    if (updates.isEmpty()) {
+      // Nothing to undo, and nothing for other processes to reload.
+      return new ImportReport(records, 0, true, problems, conflicts);
+    }
+    writeOverrides(next);
+    history.recordSnapshot(current, keymap.overrides());
+    dispatch(updates);
+    return new ImportReport(records, updates.size(), true, problems, conflicts);
+  }
+
+  private List<String> findConflicts(Map<String, Optional<Shortcut>> candidate) {
+    List<String> conflicts = new ArrayList<>();
+    Map<Shortcut, String> owners = new HashMap<>();
+    for (int i = 0; i < defaults.size(); i++) {
+      String id = defaults.id(i);
+      Shortcut shortcut = resolve(candidate, id, defaults.shortcut(i));
+      if (shortcut != null) {
+        String owner = owners.putIfAbsent(shortcut, id);
+        if (owner != null) {
+          conflicts.add(shortcut + " is bound to both " + owner + " and " + id);
+        }
+      }
+    }
+    return conflicts;
+  }
+
+  // Updates produced by replacing one set of overrides with another. Only actions overridden on
+  // either side can differ, so this is proportional to the overrides rather than the catalog.
+  private List<XActionListener.Update> diffOverrides(
+      Map<String, Optional<Shortcut>> from, Map<String, Optional<Shortcut>> to) {
+    List<XActionListener.Update> updates = new ArrayList<>();
+    for (String id : from.keySet()) {
+      addUpdate(updates, id, from, to);
+    }
+    for (String id : to.keySet()) {
+      if (!from.containsKey(id)) {
+        addUpdate(updates, id, from, to);
+      }
+    }
+    return updates;
+  }
+
+  private void addUpdate(
+      List<XActionListener.Update> updates,
+      String id,
+      Map<String, Optional<Shortcut>> from,
+      Map<String, Optional<Shortcut>> to) {
+    int index = defaults.indexOfId(id);
+    if (index < 0) {
+      return;
+    }
+    Shortcut oldShortcut = resolve(from, id, defaults.shortcut(index));
+    Shortcut newShortcut = resolve(to, id, defaults.shortcut(index));
+    if (!Objects.equals(oldShortcut, newShortcut)) {
+      updates.add(
+          new XActionListener.Update(defaults.get(index).withShortcut(newShortcut), oldShortcut));
+    }
+  }
+
+  private static Shortcut resolve(
+      Map<String, Optional<Shortcut>> overrides, String id, Shortcut defaultShortcut) {
+    Optional<Shortcut> override = overrides.get(id);
+    return override != null ? override.orElse(null) : defaultShortcut;
+  }
+
+  private void writeOverrides(Map<String, Optional<Shortcut>> next) {
+    Keymap current = keymap;
+    Preferences node = current.node();
+    for (String id : current.overrides().keySet()) {
+      if (!next.containsKey(id)) {
+        node.remove(id);
       }
     }
+    for (Map.Entry<String, Optional<Shortcut>> entry : next.entrySet()) {
+      if (!entry.getValue().equals(current.overrides().get(entry.getKey()))) {
+        node.put(entry.getKey(), encode(entry.getValue()));
+      }
+    }
+    setKeymap(current.withOverrides(next));
+    flush(node);
+  }
+
+  private void dispatch(List<XActionListener.Update> updates) {
+    if (updates.isEmpty()) {
+      return;
+    }
+    long dispatchStart = Metrics.start();
+    listener.xActionsUpdated(updates);
+    changes.publish(updates);
+    Metrics.stop(Metrics.Op.LISTENER_DISPATCH, dispatchStart);
+  }
+
+  /**
+   * Every binding change, from edits, imports, undo, profile switches, catalog reloads and other
+   * processes, delivered on the common pool. See {@link #changes(Predicate, Executor, int)}.
+   */
+  public Flow.Publisher<XActionListener.Update> changes() {
+    return changes(xaction -> true, ForkJoinPool.commonPool(), Flow.defaultBufferSize());
+  }
+
+  /**
+   * Binding changes to the actions {@code filter} accepts, for subsystems that only care about a
+   * few actions, such as a menu or a toolbar. Each subscriber has its own buffer of {@code
+   * bufferCapacity} changes, filled without blocking the thread that made the change; if it fills
+   * up the subscriber receives {@code onError} and is dropped, and should re-read the bindings
+   * with {@link #retrieveAll} before subscribing again.
+   *
+   * @param filter e.g. {@link #forIds} or {@link #forClass}
+   * @param executor runs the subscriber's callbacks, e.g. {@code SwingUtilities::invokeLater}
+   */
+  public Flow.Publisher<XActionListener.Update> changes(
+      Predicate<? super XAction> filter, Executor executor, int bufferCapacity) {
+    return changes.publisher(filter, executor, bufferCapacity);
+  }
+
+  public static Predicate<XAction> forIds(Collection<String> ids) {
+    Set<String> wanted = Set.copyOf(ids);
+    return xaction -> wanted.contains(xaction.getId());
+  }
+
+  public static Predicate<XAction> forClass(String className) {
+    return xaction -> xaction.className().equals(className);
+  }
+
+  private static String encode(Optional<Shortcut> value) {
+    return value.map(Shortcut::getInternalForm).orElse(NO_SHORTCUT);
+  }
+
+  /**
+   * Coordinates this keymap with other processes using the same namespace, such as a second
+   * instance of the application or a batch command. Every edit then runs under a cross-process
+   * file lock, on top of whatever the others stored, and increments a version stamp that the
+   * others poll. When a poll sees another process's edit, only the changed bindings are reloaded
+   * and listeners receive them in one {@link XActionListener#xActionsUpdated} call.
+   *
+   * @param pollInterval how often to check the stamp; zero to pick up other processes' edits only
+   *     before this process's own
+   * @param notifications runs listener dispatches caused by polling, e.g. {@code
+   *     SwingUtilities::invokeLater}
+   * @return closing it stops sharing
+   */
+  public synchronized Closeable shareAcrossProcesses(Duration pollInterval, Executor notifications)
+      throws IOException {
+    if (shared != null) {
+      throw new IllegalStateException(namespace + " is already shared");
+    }
+    SharedStore store = SharedStore.open(SharedStore.fileFor(namespace));
+    shared = store;
+    // Nodes created in memory but never written would overwrite other processes' edits on their
+    // first sync, so write them out before anyone relies on the lock.
+    mutate(() -> {});
+
+    ScheduledExecutorService poller =
+        pollInterval.isZero()
+            ? null
+            : Executors.newSingleThreadScheduledExecutor(
+                r -> {
+                  Thread thread = new Thread(r, "shortcut-keymap-sync");
+                  thread.setDaemon(true);
+                  return thread;
+                });
+    if (poller != null) {
+      long millis = pollInterval.toMillis();
+      poller.scheduleWithFixedDelay(
+          () -> poll(store, notifications), millis, millis, TimeUnit.MILLISECONDS);
+    }
+    return () -> {
+      if (poller != null) {
+        poller.shutdown();
+      }
+      synchronized (this) {
+        shared = null;
+      }
+      store.close();
+    };
+  }
+
+  private void poll(SharedStore store, Executor notifications) {
+    try {
+      if (!store.changedElsewhere()) {
+        return;
+      }
+      List<XActionListener.Update> updates;
+      synchronized (this) {
+        updates = refresh();
+      }
+      if (!updates.isEmpty()) {
+        notifications.execute(() -> dispatch(updates));
+      }
+    } catch (RuntimeException e) {
+      System.err.println(getClass().getName() + " could not reload shared shortcuts: " + e);
+    }
+  }
+
+  private void mutate(Runnable change) {
+    mutateAndGet(
+        () -> {
+          change.run();
+          return null;
+        });
+  }
+
+  // Runs an edit of the store. When shared, the edit holds the cross-process lock, starts from
+  // what other processes stored, is flushed before the lock is released and bumps the stamp.
+  private <T> T mutateAndGet(Supplier<T> change) {
+    SharedStore store = shared;
+    if (store == null) {
+      return change.get();
+    }
+    synchronized (this) {
+      if (mutating) {
+        // A listener edited the keymap from inside an edit; the lock is already held.
+        return change.get();
+      }
+      return store.locked(
+          () -> {
+            mutating = true;
+            try {
+              dispatch(refresh());
+              Keymap before = keymap;
+              profilesChanged = false;
+              T result = change.get();
+              // Edits that changed nothing leave other processes alone.
+              if (keymap != before || profilesChanged) {
+                prefs.flush();
+                store.bump();
+              }
+              return result;
+            } catch (BackingStoreException e) {
+              throw new IllegalStateException("could not flush shared shortcuts", e);
+            } finally {
+              mutating = false;
+            }
+          });
+    }
+  }
+
+  // Adopts whatever other processes stored in the active profile since we last looked.
+  private List<XActionListener.Update> refresh() {
+    Keymap current = keymap;
+    if (!syncNode(current.node())) {
+      return List.of();
+    }
+    Map<String, Optional<Shortcut>> stored = loadOverrides(current.node());
+    if (stored.equals(current.overrides())) {
+      return List.of();
+    }
+    List<XActionListener.Update> updates = diffOverrides(current.overrides(), stored);
+    setKeymap(current.withOverrides(stored));
+    return updates;
+  }
+
+  private boolean syncNode(Preferences node) {
+    try {
+      if (nodeExists(node, "")) {
+        // The file backend only reloads when its root has not been touched by another JVM since
+        // our previous sync, and every sync touches it; the second sync sees our own mark.
+        node.sync();
+        node.sync();
+        return true;
+      }
+    } catch (BackingStoreException e) {
+      System.err.println(getClass().getName() + " could not read shared shortcuts: " + e);
+    }
+    return false;
+  }
+
+  private static boolean nodeExists(Preferences node, String path) {
+    try {
+      return node.nodeExists(path);
+    } catch (BackingStoreException e) {
+      return false;
+    }
   }
 
   public Map<String, Shortcut> retrieveAll() {
-    Map<String, Shortcut> result = new HashMap<>();
-    for (XAction xAction : defaultXActions) {
-      String id = xAction.getId();
+    Map<String, Shortcut> result = new HashMap<>(defaults.size() * 4 / 3 + 1);
+    for (int i = 0; i < defaults.size(); i++) {
+      String id = defaults.id(i);
       result.put(id, retrieve(id));
     }
     return result;
   }
+
+  /**
+   * Outcome of {@link #importKeymap} or {@link #storeAll}.
+   *
+   * @param records number of records read
+   * @param changed number of actions whose effective binding changed
+   * @param applied false if the import was rejected because of conflicts
+   * @param problems records that were skipped, with the reason
+   * @param conflicts shortcuts that the import would have bound to more than one action
+   */
+  public record ImportReport(
+      int records, int changed, boolean applied, List<String> problems, List<String> conflicts) {}
 }
@@ -1,7 +1,17 @@
 package edu.upenn.psych.memory.shortcutmanager;
 
 public record XAction(
-    String className, String enumValue, String name, String tooltip, Shortcut shortcut) {
+    String className,
+    String enumValue,
+    String name,
+    String tooltip,
+    Shortcut shortcut,
+    String category) {
+
+  public XAction(
+      String className, String enumValue, String name, String tooltip, Shortcut shortcut) {
+    this(className, enumValue, name, tooltip, shortcut, null);
+  }
 
   public String getJavaTooltip() {
     return tooltip;
@@ -20,6 +30,6 @@ public record XAction(
   }
 
   public XAction withShortcut(Shortcut newShortcut) {
-    return new XAction(className, enumValue, name, tooltip, newShortcut);
+    return new XAction(className, enumValue, name, tooltip, newShortcut, category);
   }
 }
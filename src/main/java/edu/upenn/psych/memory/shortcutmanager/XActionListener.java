@@ -1,5 +1,19 @@
 package edu.upenn.psych.memory.shortcutmanager;
 
+import java.util.List;
+
 public interface XActionListener {
   void xActionUpdated(XAction action, Shortcut oldShortcut);
+
+  /**
+   * Called once for a group of updates that were applied together, such as an import or a reset.
+   * The default implementation forwards each update to {@link #xActionUpdated}.
+   */
+  default void xActionsUpdated(List<Update> updates) {
+    for (Update update : updates) {
+      xActionUpdated(update.action(), update.oldShortcut());
+    }
+  }
+
+  record Update(XAction action, Shortcut oldShortcut) {}
 }
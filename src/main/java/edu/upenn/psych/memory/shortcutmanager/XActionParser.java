@@ -1,27 +1,106 @@
 package edu.upenn.psych.memory.shortcutmanager;
 
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
-import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
-import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
-import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
+/**
+ * Reads the actions file in a single streaming pass that also validates it: unknown elements and
+ * attributes are ignored, and every problem is recorded with its line and column. Key and modifier
+ * names are checked against a table built once from {@link KeyEvent}'s {@code VK_} constants, so
+ * a bad name is reported where it appears rather than as an unparseable shortcut later.
+ */
 public class XActionParser {
+
+  /** What to do when the actions file has problems. */
+  public enum Validation {
+    /** Throw a {@link ShortcutFileFormatException} listing every problem in the file. */
+    STRICT,
+    /** Print the problems, skip actions that cannot be used and drop bad shortcuts. */
+    LENIENT
+  }
+
+  /** A problem in the actions file, located at the element it concerns. */
+  public record Problem(int line, int column, String message) {
+
+    @Override
+    public String toString() {
+      return line + ":" + column + ": " + message;
+    }
+  }
+
+  private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+  private static final Set<String> KEY_NAMES = keyNames();
+  private static final Set<String> MASK_NAMES =
+      Set.of("menu", "command", "shift", "ctrl", "control", "meta", "alt", "altGraph");
+
   private final URL url;
+  private final Validation validation;
+
+  // The file is read once per parser; each platform's view of it is resolved once and kept.
+  private List<ActionElement> actions;
+  private List<Problem> problems;
+  private final Map<Platform, Catalog> resolved = new ConcurrentHashMap<>();
 
   public XActionParser(URL url) {
+    this(url, Validation.LENIENT);
+  }
+
+  public XActionParser(URL url, Validation validation) {
     this.url = url;
+    this.validation = validation;
   }
 
-  public List<XAction> getXactions() {
+  public Catalog getXactions() {
+    return getXactions(Platform.current());
+  }
+
+  /** The actions that apply on {@code platform}, with the {@code menu} key mapped for it. */
+  public Catalog getXactions(Platform platform) {
+    return getXactions(platform, xaction -> {});
+  }
+
+  /**
+   * Like {@link #getXactions(Platform)}, but also hands each action to {@code onAction}, in file
+   * order, as soon as its element has been read, so the start of a large file can be shown before
+   * the rest is parsed. Duplicates and, with {@link Validation#STRICT}, problems are only reported
+   * once the whole file has been read, after the actions concerned were handed over.
+   */
+  public Catalog getXactions(Platform platform, Consumer<? super XAction> onAction) {
+    Catalog cached = resolved.get(platform);
+    if (cached != null) {
+      cached.forEach(onAction);
+      return cached;
+    }
+    long start = Metrics.start();
     try {
-      List<XAction> acts = parseXActions();
+      List<XAction> acts = new ArrayList<>();
+      forEachEntry(
+          platform,
+          entry -> {
+            if (entry.appliesTo(platform)) {
+              acts.add(entry.action());
+              onAction.accept(entry.action());
+            }
+          });
 
       // Check for duplicates
       List<Shortcut> shortcuts = new ArrayList<>();
@@ -37,9 +116,53 @@ public class XActionParser {
       assertNoDups(ids, "ID");
       assertNoDups(shortcuts, "shortcut");
 
-      return acts;
-    } catch (Exception e) {
+      Catalog catalog = Catalog.of(acts);
+      Catalog raced = resolved.putIfAbsent(platform, catalog);
+      return raced != null ? raced : catalog;
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to parse XActions", e);
+    } finally {
+      Metrics.stop(Metrics.Op.PARSE, start);
+    }
+  }
+
+  /**
+   * Resolves the catalog for several platforms in parallel from a single read of the file, e.g. to
+   * document every platform at once.
+   */
+  public Map<Platform, Catalog> getXactions(Collection<Platform> platforms) {
+    try {
+      readActions(element -> {});
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to parse XActions", e);
+    }
+    List<Catalog> catalogs = platforms.parallelStream().map(this::getXactions).toList();
+    Map<Platform, Catalog> byPlatform = new LinkedHashMap<>();
+    int i = 0;
+    for (Platform platform : platforms) {
+      byPlatform.put(platform, catalogs.get(i++));
+    }
+    return byPlatform;
+  }
+
+  /**
+   * Returns every action in the file, including those restricted to other operating systems, and
+   * without checking for duplicates. Used for whole-catalog analysis such as {@link
+   * ConflictAnalyzer}.
+   */
+  public List<CatalogEntry> getCatalog() {
+    return getCatalog(Platform.current());
+  }
+
+  /** Like {@link #getCatalog()}, with the {@code menu} key mapped for {@code platform}. */
+  public List<CatalogEntry> getCatalog(Platform platform) {
+    long start = Metrics.start();
+    try {
+      return parseEntries(platform);
+    } catch (IOException e) {
       throw new RuntimeException("Failed to parse XActions", e);
+    } finally {
+      Metrics.stop(Metrics.Op.PARSE, start);
     }
   }
 
@@ -53,119 +176,292 @@ public class XActionParser {
     }
   }
 
-  private List<XAction> parseXActions() throws Exception {
-    XmlMapper mapper = new XmlMapper();
-    ActionsRoot root = mapper.readValue(url.openStream(), ActionsRoot.class);
+  /** The problems found in the file, reading it if that has not happened yet. */
+  public List<Problem> getProblems() {
+    try {
+      readActions(element -> {});
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to parse XActions", e);
+    }
+    return problems;
+  }
 
-    List<XAction> xactions = new ArrayList<>();
-    for (ActionElement actionEl : root.actions) {
-      XAction action = parseAction(actionEl);
-      if (action != null) {
-        xactions.add(action);
+  // Hands every action element to sink as it is read, or at once if the file was read before.
+  private void readActions(Consumer<ActionElement> sink) throws IOException {
+    List<ActionElement> read;
+    synchronized (this) {
+      read = actions;
+      if (read == null) {
+        readFile(sink);
+        return;
       }
     }
+    // Outside the lock, so catalogs for several platforms resolve in parallel.
+    read.forEach(sink);
+  }
 
-    return xactions;
+  private void readFile(Consumer<ActionElement> sink) throws IOException {
+    List<Problem> found = new ArrayList<>();
+    List<ActionElement> read = new ArrayList<>();
+    try (InputStream in = url.openStream()) {
+      XMLStreamReader xml = INPUT_FACTORY.createXMLStreamReader(in);
+      try {
+        readActions(
+            xml,
+            element -> {
+              read.add(element);
+              sink.accept(element);
+            },
+            found);
+      } finally {
+        xml.close();
+      }
+    } catch (XMLStreamException e) {
+      // Not well-formed: nothing after this point can be read, whatever the mode.
+      found.add(problem(e.getLocation(), describe(e)));
+      throw new ShortcutFileFormatException(url, found);
+    }
+    if (!found.isEmpty()) {
+      if (validation == Validation.STRICT) {
+        throw new ShortcutFileFormatException(url, found);
+      }
+      for (Problem problem : found) {
+        System.err.println(url + ":" + problem);
+      }
+    }
+    problems = List.copyOf(found);
+    actions = List.copyOf(read);
   }
 
-  private XAction parseAction(ActionElement actionEl) {
-    String name = actionEl.name;
-    String clazz = actionEl.className;
-    String tooltip = actionEl.tooltip;
-    String argValue = actionEl.enumValue;
-    String osValue = actionEl.os;
-
-    // Check OS compatibility
-    if (osValue != null) {
-      var goodOSes = List.of(osValue.split(","));
-      String currentOS = System.getProperty("os.name");
-      if (!goodOSes.contains(currentOS)) {
-        return null;
+  private static void readActions(
+      XMLStreamReader xml, Consumer<ActionElement> actions, List<Problem> problems)
+      throws XMLStreamException {
+    xml.nextTag();
+    if (!"actions".equals(xml.getLocalName())) {
+      problems.add(problem(xml, "root element is <" + xml.getLocalName() + ">, not <actions>"));
+      return;
+    }
+    while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if ("action".equals(xml.getLocalName())) {
+        ActionElement action = readAction(xml, problems);
+        if (action != null) {
+          actions.accept(action);
+        }
+      } else {
+        skipElement(xml);
       }
     }
+  }
 
-    XAction baseXAction = new XAction(clazz, argValue, name, tooltip, null);
+  private static ActionElement readAction(XMLStreamReader xml, List<Problem> problems)
+      throws XMLStreamException {
+    Location location = xml.getLocation();
+    ActionElement action = new ActionElement();
+    action.className = xml.getAttributeValue(null, "class");
+    action.name = xml.getAttributeValue(null, "name");
+    action.tooltip = xml.getAttributeValue(null, "tooltip");
+    action.enumValue = xml.getAttributeValue(null, "enum");
+    action.os = xml.getAttributeValue(null, "os");
+    action.category = xml.getAttributeValue(null, "category");
 
-    if (actionEl.shortcut == null) {
-      return baseXAction;
-    } else {
-      Shortcut shortcut = parseShortcut(actionEl.shortcut);
-      if (shortcut != null) {
-        return baseXAction.withShortcut(shortcut);
+    while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if (!"shortcut".equals(xml.getLocalName())) {
+        skipElement(xml);
+      } else if (action.shortcut != null) {
+        problems.add(problem(xml, "action has more than one <shortcut>"));
+        skipElement(xml);
       } else {
-        return null;
+        action.shortcut = readShortcut(xml, problems);
       }
     }
-  }
 
-  private Shortcut parseShortcut(ShortcutElement shortcutEl) {
-    List<String> maskKeyNames = new ArrayList<>();
-    List<String> nonMaskKeyNames = new ArrayList<>();
+    if (action.className == null || action.className.isBlank()) {
+      problems.add(problem(location, "action has no class attribute"));
+      return null;
+    } else if (action.name == null) {
+      problems.add(problem(location, "action " + action.id() + " has no name attribute"));
+      return null;
+    }
+    return action;
+  }
 
-    if (shortcutEl.masks != null) {
-      for (KeyElement mask : shortcutEl.masks) {
-        maskKeyNames.add(mask.keyname);
+  // Returns null, after recording why, if the shortcut cannot be used.
+  private static ShortcutElement readShortcut(XMLStreamReader xml, List<Problem> problems)
+      throws XMLStreamException {
+    Location location = xml.getLocation();
+    ShortcutElement shortcut = new ShortcutElement();
+    boolean valid = true;
+    while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      String element = xml.getLocalName();
+      boolean mask = "mask".equals(element);
+      if (!mask && !"key".equals(element)) {
+        skipElement(xml);
+        continue;
+      }
+      Location at = xml.getLocation();
+      String keyname = xml.getAttributeValue(null, "keyname");
+      skipElement(xml);
+      if (keyname == null) {
+        problems.add(problem(at, "<" + element + "> has no keyname attribute"));
+        valid = false;
+      } else if (mask && !MASK_NAMES.contains(keyname)) {
+        problems.add(problem(at, "unknown modifier \"" + keyname + "\""));
+        valid = false;
+      } else if (!mask && !KEY_NAMES.contains(keyname)) {
+        problems.add(problem(at, "unknown key name \"" + keyname + "\""));
+        valid = false;
+      } else {
+        (mask ? shortcut.masks : shortcut.keys).add(keyname);
       }
     }
+    if (valid && shortcut.keys.size() != 1) {
+      problems.add(problem(location, "shortcut needs exactly one <key>"));
+      valid = false;
+    }
+    return valid ? shortcut : null;
+  }
 
-    if (shortcutEl.keys != null) {
-      for (KeyElement key : shortcutEl.keys) {
-        nonMaskKeyNames.add(key.keyname);
+  // Leaves the reader on the end tag of the current element.
+  private static void skipElement(XMLStreamReader xml) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = xml.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
       }
     }
+  }
 
-    return Shortcut.fromExternalForm(maskKeyNames, nonMaskKeyNames);
+  private static Problem problem(XMLStreamReader xml, String message) {
+    return problem(xml.getLocation(), message);
   }
 
-  @JacksonXmlRootElement(localName = "actions")
-  @JsonIgnoreProperties(ignoreUnknown = true)
-  private static final class ActionsRoot {
-    @JacksonXmlElementWrapper(useWrapping = false)
-    @JsonProperty("action")
-    public List<ActionElement> actions = new ArrayList<>();
+  private static Problem problem(Location location, String message) {
+    return location == null
+        ? new Problem(0, 0, message)
+        : new Problem(location.getLineNumber(), location.getColumnNumber(), message);
   }
 
-  @JsonIgnoreProperties(ignoreUnknown = true)
-  private static final class ActionElement {
-    @JacksonXmlProperty(isAttribute = true, localName = "class")
-    public String className;
+  // StAX implementations prefix the message with the location, which the problem already has.
+  private static String describe(XMLStreamException e) {
+    String message = String.valueOf(e.getMessage());
+    int start = message.indexOf("Message: ");
+    if (start >= 0) {
+      return message.substring(start + "Message: ".length());
+    }
+    int end = message.indexOf('\n');
+    return end >= 0 ? message.substring(0, end) : message;
+  }
 
-    @JacksonXmlProperty(isAttribute = true)
-    public String name;
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
 
-    @JacksonXmlProperty(isAttribute = true)
-    public String tooltip;
+  // The names KeyStroke.getKeyStroke accepts for a key: KeyEvent's VK_ constants, unprefixed.
+  private static Set<String> keyNames() {
+    Set<String> names = new HashSet<>();
+    for (Field field : KeyEvent.class.getFields()) {
+      if (Modifier.isStatic(field.getModifiers())
+          && field.getType() == int.class
+          && field.getName().startsWith("VK_")) {
+        names.add(field.getName().substring(3));
+      }
+    }
+    return Set.copyOf(names);
+  }
 
-    @JacksonXmlProperty(isAttribute = true, localName = "enum")
-    public String enumValue;
+  private List<CatalogEntry> parseEntries(Platform platform) throws IOException {
+    List<CatalogEntry> entries = new ArrayList<>();
+    forEachEntry(platform, entries::add);
+    return entries;
+  }
 
-    @JacksonXmlProperty(isAttribute = true)
-    public String os;
+  private void forEachEntry(Platform platform, Consumer<CatalogEntry> sink) throws IOException {
+    readActions(
+        actionEl -> {
+          CatalogEntry entry = parseAction(actionEl, platform);
+          if (entry != null) {
+            sink.accept(entry);
+          }
+        });
+  }
 
-    @JsonProperty("shortcut")
-    public ShortcutElement shortcut;
+  private CatalogEntry parseAction(ActionElement actionEl, Platform platform) {
+    String name = actionEl.name;
+    String clazz = actionEl.className;
+    String tooltip = actionEl.tooltip;
+    String argValue = actionEl.enumValue;
+    String category = actionEl.category;
+
+    List<String> goodOSes = actionEl.oses();
+    XAction baseXAction = new XAction(clazz, argValue, name, tooltip, null, category);
+
+    if (actionEl.shortcut == null) {
+      return new CatalogEntry(baseXAction, goodOSes);
+    }
+    ShortcutElement shortcutEl = actionEl.shortcut;
+    Shortcut.Result result =
+        Shortcut.parseExternalForm(shortcutEl.masks, shortcutEl.keys, platform);
+    if (!result.isValid()) {
+      // Names were checked while reading; the platform cannot express this combination, so the
+      // action starts unbound there, as it would if the file left it out for that platform.
+      return new CatalogEntry(baseXAction, goodOSes);
+    }
+    return new CatalogEntry(baseXAction.withShortcut(result.shortcut()), goodOSes);
   }
 
-  @JsonIgnoreProperties(ignoreUnknown = true)
-  private static final class ShortcutElement {
-    @JacksonXmlElementWrapper(useWrapping = false)
-    @JsonProperty("mask")
-    public List<KeyElement> masks = new ArrayList<>();
+  private static final class ActionElement {
+    String className;
+    String name;
+    String tooltip;
+    String enumValue;
+    String os;
+    String category;
+    ShortcutElement shortcut;
+
+    private List<String> oses;
 
-    @JacksonXmlElementWrapper(useWrapping = false)
-    @JsonProperty("key")
-    public List<KeyElement> keys = new ArrayList<>();
+    String id() {
+      return enumValue != null ? className + "-" + enumValue : className;
+    }
+
+    // Split once, however many platforms the file is resolved for.
+    synchronized List<String> oses() {
+      if (oses == null) {
+        oses = os != null ? List.of(os.split(",")) : List.of();
+      }
+      return oses;
+    }
   }
 
-  @JsonIgnoreProperties(ignoreUnknown = true)
-  private static final class KeyElement {
-    @JacksonXmlProperty(isAttribute = true)
-    public String keyname;
+  private static final class ShortcutElement {
+    final List<String> masks = new ArrayList<>();
+    final List<String> keys = new ArrayList<>();
   }
 
   public static class ShortcutFileFormatException extends RuntimeException {
+    private final List<Problem> problems;
+
     public ShortcutFileFormatException(String msg) {
       super(msg);
+      this.problems = List.of();
+    }
+
+    public ShortcutFileFormatException(URL url, List<Problem> problems) {
+      super(
+          problems.stream()
+              .map(problem -> url + ":" + problem)
+              .collect(Collectors.joining(System.lineSeparator())));
+      this.problems = List.copyOf(problems);
+    }
+
+    public List<Problem> getProblems() {
+      return problems;
     }
   }
 }